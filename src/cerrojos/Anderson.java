@@ -0,0 +1,220 @@
+package cerrojos;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import medidas.Contadores;
+
+/**
+ * Cerrojo de Anderson: cola de espera sobre un array circular, para
+ * un número máximo de hebras.
+ *
+ * En los TestAndSet todas las hebras esperan sobre el mismo
+ * _cerrojo, así que al soltarlo se invalida la línea de caché de
+ * todas, y todas se lanzan a por él. Aquí cada hebra que llega coge
+ * la siguiente posición de un array circular (con getAndIncrement()
+ * sobre la cola) y espera a que su posición se ponga a "libre". Al
+ * salir, pone a libre la siguiente posición. Así cada hebra espera
+ * sobre su propia línea de caché (las posiciones están separadas por
+ * relleno), y al salir sólo se invalida la de la hebra siguiente.
+ *
+ * El array tiene tantas posiciones como la potencia de dos que llega
+ * al número de hebras. Como nunca hay más hebras esperando que
+ * posiciones, no se pisan al dar la vuelta. La posición se saca con
+ * una máscara, que sigue funcionando cuando el contador de la cola
+ * desborda (porque el tamaño es potencia de dos).
+ *
+ * main() comprueba esas dos vueltas (la del array y la del contador).
+ * Para compararlo con muchas hebras:
+ *
+ * 	java cerrojos.Anderson [numVeces]
+ * 	java medidas.Barrido -p ttas,ticket,anderson -h 8,16,32,64
+ */
+public class Anderson implements Cerrojo {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numHebras Número de hebras (numeradas desde 0) que
+	 * usarán el cerrojo.
+	 */
+	public Anderson(int numHebras) {
+
+		this(numHebras, 0);
+
+	} // constructor
+
+	/**
+	 * Constructor que empieza la cola en un valor dado, para probar
+	 * el desbordamiento del contador.
+	 */
+	Anderson(int numHebras, int colaInicial) {
+
+		_numHebras = numHebras;
+		int posiciones = 1;
+		while (posiciones < numHebras)
+			posiciones *= 2;
+		_mascara = posiciones - 1;
+		_libre = new AtomicIntegerArray((posiciones + 1) * SEPARACION);
+		_libre.set(posicion(colaInicial), 1);
+		_cola = new AtomicInteger(colaInicial);
+		_miPosicion = new int[(numHebras + 1) * SEPARACION];
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de hebra (de 0 a numHebras - 1) que
+	 * quiere entrar en la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		int pos = posicion(_cola.getAndIncrement());
+		_miPosicion[(numHebra + 1) * SEPARACION] = pos;
+		int vueltas = 0;
+		while (_libre.get(pos) == 0)
+			++vueltas; // Espera activa sobre nuestra posición
+		// La dejamos ocupada para la siguiente vuelta del array.
+		_libre.set(pos, 0);
+		if ((_contadores != null) && (vueltas > 0)) {
+			_contadores.cuenta(numHebra, Contadores.ESPERAS_TURNO);
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+		}
+
+		// ¡Nos toca!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica. Le pasa el turno a la siguiente posición.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		int pos = _miPosicion[(numHebra + 1) * SEPARACION];
+		_libre.set(siguiente(pos), 1);
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() {
+
+		return _numHebras;
+
+	} // maxHebras
+
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	//-----------------------------------------------------
+
+	/**
+	 * Índice en _libre de la posición de la cola dada.
+	 */
+	protected int posicion(int cola) {
+
+		return ((cola & _mascara) + 1) * SEPARACION;
+
+	} // posicion
+
+	/**
+	 * Índice en _libre de la posición que sigue a la dada.
+	 */
+	protected int siguiente(int pos) {
+
+		return ((pos / SEPARACION) & _mascara) * SEPARACION + SEPARACION;
+
+	} // siguiente
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Pruebas de las vueltas: con pocas posiciones y muchas entradas
+	 * (el array da muchas vueltas), y empezando la cola justo antes
+	 * de Integer.MAX_VALUE (el contador desborda y pasa a negativo).
+	 * En cada una comprueba la suma y que la cola ha avanzado una
+	 * posición por entrada.
+	 *
+	 * @param args Entradas por hebra (opcional).
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws InterruptedException {
+
+		int numVeces = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+		int[][] pruebas = {
+			// hebras, cola inicial
+			{ 2, 0 },
+			{ 3, 0 },
+			{ 4, Integer.MAX_VALUE - 7 },
+			{ 5, -3 },
+		};
+		for (int[] prueba : pruebas) {
+			int numHebras = prueba[0];
+			Anderson cerrojo = new Anderson(numHebras, prueba[1]);
+			Carga carga = cerrojo.creaCarga(10);
+			long nanos = Motor.ejecuta(cerrojo, carga, numHebras, numVeces,
+			                           TimeUnit.SECONDS.toNanos(120));
+			long resultadoEsperado = 10L * numVeces * numHebras;
+			int colaEsperada = prueba[1] + numHebras * numVeces; // Puede desbordar
+			System.out.println(numHebras + " hebras, " + (cerrojo._mascara + 1)
+			                   + " posiciones, cola desde " + prueba[1] + ": "
+			                   + (nanos < 0 ? "¡¡¡BLOQUEADO!!!" : "suma " + carga.getSuma()
+			                      + ", cola " + cerrojo._cola.get()));
+			if ((nanos < 0) || (carga.getSuma() != resultadoEsperado)
+			    || (cerrojo._cola.get() != colaEsperada))
+				System.out.println("¡¡¡NO COINCIDEN!!! Esperábamos suma "
+				                   + resultadoEsperado + ", cola " + colaEsperada);
+		}
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Distancia (en ints) entre dos posiciones: 128 bytes, dos líneas
+	 * de caché. La primera queda sin usar para separarlas de la
+	 * cabecera del array.
+	 */
+	protected static final int SEPARACION = 32;
+
+	protected final int _numHebras;
+
+	/**
+	 * Número de posiciones menos uno (es potencia de dos).
+	 */
+	protected final int _mascara;
+
+	/**
+	 * A 1 la posición cuya hebra puede entrar, con relleno.
+	 */
+	protected final AtomicIntegerArray _libre;
+
+	/**
+	 * Siguiente valor de la cola a repartir.
+	 */
+	protected final AtomicInteger _cola;
+
+	/**
+	 * Índice en _libre de la posición de cada hebra, con relleno.
+	 * Sólo lo usa la propia hebra.
+	 */
+	protected final int[] _miPosicion;
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
+
+} // Anderson
@@ -0,0 +1,237 @@
+package cerrojos;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orden de memoria (barreras) de los accesos a los flags y al turno
+ * en PetersonBarreras y DekkerBarreras.
+ *
+ * En p07.DekkerFinal y p08.Peterson todos los accesos son volátiles:
+ * cada escritura lleva detrás una barrera completa (en x86, un
+ * "lock add" o un mfence) y cada lectura es de adquisición. Pero los
+ * dos algoritmos sólo necesitan una barrera completa (StoreLoad) en
+ * un sitio: entre anunciar la intención de entrar (escribir el flag
+ * propio y, en Peterson, el turno) y leer el flag de la otra hebra.
+ * Sin ella, las dos hebras pueden leer el flag de la otra antes de
+ * que se vea el suyo, y entrar las dos (la carrera de p02.Clase02,
+ * pero aquí con escrituras seguidas de lecturas).
+ *
+ * Peterson necesita además que la escritura del turno sea una
+ * lectura-escritura atómica (getAndSet, en cedeTurno()). Con el flag
+ * y el turno escritos con liberación y la barrera completa sólo en la
+ * hebra que lee, POWER (y el modelo de Java) permite que B escriba
+ * flag[B] y luego turno = A, que A escriba turno = B después (en el
+ * orden de coherencia del turno), haga la barrera y aun así lea
+ * flag[B] a 0: A entra por el flag y B, que lee turno == B, también
+ * (la forma "R" de los tests de litmus). Con getAndSet las dos
+ * escrituras del turno se sincronizan entre sí: la de A ve la de B, y
+ * con ella el flag[B] anterior. Todo lo demás basta con que sea de
+ * adquisición y liberación: la salida libera (publica lo escrito en la
+ * sección crítica) y la lectura que decide entrar adquiere.
+ *
+ * Variantes:
+ *
+ * 	- volatil: todo volátil, como p07 y p08. Es la referencia.
+ * 	- adqlib: anuncios con setRelease(), turno con getAndSet(), una
+ * 	  barrera completa con VarHandle.fullFence(), lecturas con
+ * 	  getAcquire() y salida con setRelease(). En x86 adquisición y
+ * 	  liberación no cuestan nada, así que sólo queda la barrera (y,
+ * 	  en Peterson, el xchg del turno, que ya es una barrera).
+ * 	- opaco: anuncios y lecturas opacos (sin orden, pero sin que el
+ * 	  JIT los quite del bucle), una barrera StoreStore antes de cada
+ * 	  anuncio, turno con getAndSet(), la barrera completa, una
+ * 	  barrera de adquisición al terminar de esperar y una de
+ * 	  liberación antes de la escritura de salida. En ARM o POWER se
+ * 	  cambian las lecturas de adquisición de cada vuelta por una sola
+ * 	  barrera, y las liberaciones de los anuncios por StoreStore.
+ * 	- sinbarrera: como adqlib, pero sin la barrera completa y con el
+ * 	  turno escrito con setRelease(). Es INCORRECTA (también en x86,
+ * 	  por el buffer de escrituras); está para comprobar que la prueba
+ * 	  de estrés detecta el fallo. Con una sola CPU no se ve: las
+ * 	  hebras no se ejecutan a la vez. Sólo la registra el main() (no
+ * 	  está en Cerrojos).
+ *
+ * El main() es una prueba de estrés (muchas ejecuciones cortas, en
+ * las que la suma de la carga tiene que coincidir) seguida de una
+ * medida rápida de productividad de cada variante. Para una medida
+ * seria, cada una en su JVM:
+ *
+ * 	java cerrojos.Barreras [ejecuciones] [numVeces]
+ * 	java medidas.Banco -p peterson.volatil,peterson.adqlib,peterson.opaco -h 2 -l 1,100
+ */
+public enum Barreras {
+
+	VOLATIL("volatil") {
+		void anuncia(int[] a, int i, int valor) { ELEMENTO.setVolatile(a, i, valor); }
+		void cedeTurno(int[] a, int i, int valor) { ELEMENTO.setVolatile(a, i, valor); }
+		void barrera() { }
+		int lee(int[] a, int i) { return (int) ELEMENTO.getVolatile(a, i); }
+		void trasEsperar() { }
+		void suelta(int[] a, int i, int valor) { ELEMENTO.setVolatile(a, i, valor); }
+	},
+	ADQUISICION_LIBERACION("adqlib") {
+		void anuncia(int[] a, int i, int valor) { ELEMENTO.setRelease(a, i, valor); }
+		void cedeTurno(int[] a, int i, int valor) { ELEMENTO.getAndSet(a, i, valor); }
+		void barrera() { VarHandle.fullFence(); }
+		int lee(int[] a, int i) { return (int) ELEMENTO.getAcquire(a, i); }
+		void trasEsperar() { }
+		void suelta(int[] a, int i, int valor) { ELEMENTO.setRelease(a, i, valor); }
+	},
+	OPACO("opaco") {
+		void anuncia(int[] a, int i, int valor) {
+			VarHandle.storeStoreFence();
+			ELEMENTO.setOpaque(a, i, valor);
+		}
+		void cedeTurno(int[] a, int i, int valor) { ELEMENTO.getAndSet(a, i, valor); }
+		void barrera() { VarHandle.fullFence(); }
+		int lee(int[] a, int i) { return (int) ELEMENTO.getOpaque(a, i); }
+		void trasEsperar() { VarHandle.acquireFence(); }
+		void suelta(int[] a, int i, int valor) {
+			VarHandle.releaseFence();
+			ELEMENTO.setOpaque(a, i, valor);
+		}
+	},
+	SIN_BARRERA("sinbarrera") {
+		void anuncia(int[] a, int i, int valor) { ELEMENTO.setRelease(a, i, valor); }
+		void cedeTurno(int[] a, int i, int valor) { ELEMENTO.setRelease(a, i, valor); }
+		void barrera() { }
+		int lee(int[] a, int i) { return (int) ELEMENTO.getAcquire(a, i); }
+		void trasEsperar() { }
+		void suelta(int[] a, int i, int valor) { ELEMENTO.setRelease(a, i, valor); }
+	};
+
+	Barreras(String nombre) { this.nombre = nombre; }
+
+	/**
+	 * Escritura al anunciar la intención de entrar (o de retirarse).
+	 */
+	abstract void anuncia(int[] a, int i, int valor);
+
+	/**
+	 * Escritura del turno en Peterson, después de anunciar el flag.
+	 */
+	abstract void cedeTurno(int[] a, int i, int valor);
+
+	/**
+	 * Barrera entre los anuncios y las lecturas de la otra hebra.
+	 */
+	abstract void barrera();
+
+	/**
+	 * Lectura mientras se espera.
+	 */
+	abstract int lee(int[] a, int i);
+
+	/**
+	 * Barrera después de la última lectura de la espera, antes de
+	 * entrar en la sección crítica.
+	 */
+	abstract void trasEsperar();
+
+	/**
+	 * Escritura al salir de la sección crítica.
+	 */
+	abstract void suelta(int[] a, int i, int valor);
+
+	public final String nombre;
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Busca una variante por nombre.
+	 *
+	 * @param nombre Nombre corto (volatil, adqlib, opaco, sinbarrera).
+	 * @return Variante.
+	 */
+	public static Barreras deNombre(String nombre) {
+
+		for (Barreras b : values())
+			if (b.nombre.equals(nombre))
+				return b;
+		throw new IllegalArgumentException("Variante desconocida: " + nombre);
+
+	} // deNombre
+
+	/**
+	 * Prueba de estrés y medida rápida de cada variante de
+	 * DekkerBarreras y PetersonBarreras.
+	 *
+	 * @param args Número de ejecuciones de la prueba de estrés y
+	 * entradas por hebra en cada una (opcionales).
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws InterruptedException {
+
+		int ejecuciones = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+		long numVeces = (args.length > 1) ? Long.parseLong(args[1]) : 10000;
+		long limite = TimeUnit.SECONDS.toNanos(60);
+
+		System.out.printf("%-22s %12s %14s%n", "Protocolo", "fallos", "ops/s");
+		for (String protocolo : new String[] { "dekker", "peterson" }) {
+			for (Barreras b : values()) {
+				String nombre = protocolo + "." + b.nombre;
+				// Estrés: sección crítica de una sola suma, para que
+				// las entradas se solapen lo más posible.
+				int fallos = 0, bloqueos = 0;
+				for (int i = 0; i < ejecuciones; ++i) {
+					Cerrojo cerrojo = crea(protocolo, b);
+					Carga carga = cerrojo.creaCarga(1);
+					if (Motor.ejecuta(cerrojo, carga, 2, numVeces, limite) < 0)
+						++bloqueos;
+					else if (carga.getSuma() != 2 * numVeces)
+						++fallos;
+				}
+				// Productividad: mediana de unas cuantas ejecuciones
+				// más largas.
+				double[] ops = new double[5];
+				for (int i = 0; i < ops.length; ++i) {
+					Cerrojo cerrojo = crea(protocolo, b);
+					long nanos = Motor.ejecuta(cerrojo, cerrojo.creaCarga(1), 2,
+					                           10 * numVeces, limite);
+					ops[i] = (nanos > 0) ? 2 * 10 * numVeces * 1e9 / nanos : 0;
+				}
+				Arrays.sort(ops);
+				System.out.println(String.format(Locale.ROOT, "%-22s %12s %14.1f", nombre,
+				        fallos + "/" + ejecuciones + ((bloqueos > 0) ? " (" + bloqueos
+				                                      + " bloq.)" : ""),
+				        ops[ops.length / 2]));
+				if ((fallos > 0) && (b != SIN_BARRERA))
+					System.out.println("¡¡¡NO COINCIDEN!!!");
+			}
+		}
+
+	} // main
+
+	/**
+	 * Crea el cerrojo de una variante sin pasar por Cerrojos, que no
+	 * registra sinbarrera.
+	 */
+	private static Cerrojo crea(String protocolo, Barreras b) {
+
+		return protocolo.equals("dekker") ? new DekkerBarreras(b) : new PetersonBarreras(b);
+
+	} // crea
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Acceso a las posiciones de un int[].
+	 */
+	static final VarHandle ELEMENTO = MethodHandles.arrayElementVarHandle(int[].class);
+
+	/**
+	 * Distancia (en ints) entre los valores del estado de un cerrojo:
+	 * 128 bytes, como en Anderson. La primera posición queda sin usar
+	 * para separarlos de la cabecera del array.
+	 */
+	static final int SEPARACION = 32;
+
+} // Barreras
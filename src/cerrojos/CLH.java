@@ -0,0 +1,330 @@
+package cerrojos;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import medidas.Contadores;
+
+/**
+ * Cerrojo CLH (Craig, Landin y Hagersten): cola de espera implícita
+ * en la que cada hebra espera sobre el nodo de la que tiene delante,
+ * con la posibilidad de abandonar la espera pasado un plazo.
+ *
+ * Para entrar, cada hebra pone su nodo al final de la cola con
+ * getAndSet() sobre _cola, y se queda con el que había (su
+ * predecesor). Espera hasta que el predecesor lo marca como LIBRE al
+ * salir. La cola no tiene enlaces: cada hebra sólo conoce a su
+ * predecesor.
+ *
+ * Los nodos se reciclan como en el CLH clásico: al salir, el nodo
+ * propio queda para la hebra siguiente, y la hebra se queda con el
+ * de su predecesor, que ya no usa nadie. Hay un nodo por hebra más
+ * uno, y no se reserva memoria al entrar.
+ *
+ * Todas las entradaSeccionCritica() de las prácticas esperan
+ * indefinidamente, aunque la hebra que está dentro se haya quedado
+ * parada. Con intentaEntradaSeccionCritica() la hebra espera sólo
+ * hasta un plazo. Si se cumple, abandona la cola (como el "Time-Out
+ * Lock" de Scott): si su nodo es el último, lo quita de la cola
+ * devolviéndola a su predecesor; si no, deja en su nodo un enlace al
+ * predecesor, y la hebra de detrás se salta el nodo abandonado y
+ * pasa a esperar sobre ese predecesor. Sólo en este segundo caso la
+ * hebra necesita un nodo nuevo, porque el abandonado lo sigue viendo
+ * la de detrás.
+ *
+ * main() prueba los abandonos con una hebra que se queda mucho
+ * tiempo dentro, y muchas hebras entrando con plazos cortos.
+ *
+ * 	java cerrojos.CLH
+ * 	java medidas.Barrido -p mcs,clh -h 2,4,8,16,32,64
+ */
+public class CLH implements Cerrojo {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numHebras Número de hebras (numeradas desde 0) que
+	 * usarán el cerrojo.
+	 */
+	public CLH(int numHebras) {
+
+		_nodos = new Nodo[numHebras];
+		for (int i = 0; i < numHebras; ++i)
+			_nodos[i] = new Nodo();
+		_predecesores = new Nodo[numHebras];
+		Nodo inicial = new Nodo();
+		inicial.anterior = LIBRE;
+		_cola = new AtomicReference<Nodo>(inicial);
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica. Espera
+	 * indefinidamente.
+	 *
+	 * @param numHebra Número de hebra (de 0 a numHebras - 1) que
+	 * quiere entrar en la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		entra(numHebra, false, 0);
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Preprotocolo" con plazo: intenta entrar en la sección crítica
+	 * esperando como mucho el tiempo dado.
+	 *
+	 * @param numHebra Número de hebra (de 0 a numHebras - 1) que
+	 * quiere entrar en la sección crítica.
+	 * @param plazo Tiempo máximo de espera.
+	 * @param unidad Unidad de plazo.
+	 * @return true si la hebra ha entrado en la sección crítica (y
+	 * tendrá que llamar a salidaSeccionCritica()); false si se ha
+	 * cumplido el plazo y ha abandonado la cola.
+	 */
+	public boolean intentaEntradaSeccionCritica(int numHebra, long plazo, TimeUnit unidad) {
+
+		return entra(numHebra, true, System.nanoTime() + unidad.toNanos(plazo));
+
+	} // intentaEntradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica. Marca su nodo como libre para la siguiente, y recicla
+	 * el del predecesor.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		Nodo yo = _nodos[numHebra];
+		_nodos[numHebra] = _predecesores[numHebra];
+		_predecesores[numHebra] = null;
+		yo.anterior = LIBRE;
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() {
+
+		return _nodos.length;
+
+	} // maxHebras
+
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	//-----------------------------------------------------
+
+	/**
+	 * Entrada común con y sin plazo.
+	 *
+	 * @param numHebra Número de hebra.
+	 * @param conPlazo Si se abandona al llegar a limite.
+	 * @param limite Instante (de System.nanoTime()) en el que se
+	 * abandona.
+	 * @return true si ha entrado.
+	 */
+	protected boolean entra(int numHebra, boolean conPlazo, long limite) {
+
+		Nodo yo = _nodos[numHebra];
+		yo.anterior = null;
+		Nodo predecesor = _cola.getAndSet(yo);
+		long vueltas = 0;
+		while (true) {
+			Nodo anterior = predecesor.anterior;
+			if (anterior == LIBRE)
+				break;
+			if (anterior != null) {
+				// El predecesor ha abandonado: esperamos al suyo.
+				predecesor = anterior;
+				continue;
+			}
+			++vueltas;
+			if (conPlazo && ((vueltas & 0x3f) == 0) && (System.nanoTime() - limite >= 0)) {
+				abandona(numHebra, yo, predecesor);
+				cuenta(numHebra, vueltas, true);
+				return false;
+			}
+		}
+		_predecesores[numHebra] = predecesor;
+		cuenta(numHebra, vueltas, false);
+
+		// ¡Nos toca!
+		return true;
+
+	} // entra
+
+	/**
+	 * Saca de la cola el nodo de una hebra que abandona la espera.
+	 */
+	private void abandona(int numHebra, Nodo yo, Nodo predecesor) {
+
+		if (_cola.compareAndSet(yo, predecesor)) {
+			// Éramos los últimos: nadie ha visto nuestro nodo y lo
+			// podemos seguir usando.
+			return;
+		}
+		// Hay alguien detrás esperando sobre nuestro nodo. Le dejamos
+		// el enlace al predecesor, y nos hace falta otro nodo.
+		yo.anterior = predecesor;
+		_nodos[numHebra] = new Nodo();
+
+	} // abandona
+
+	private void cuenta(int numHebra, long vueltas, boolean abandono) {
+
+		if ((_contadores == null) || ((vueltas == 0) && !abandono))
+			return;
+		_contadores.cuenta(numHebra, Contadores.ESPERAS_TURNO);
+		_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+		if (abandono)
+			_contadores.cuenta(numHebra, Contadores.RETIRADAS);
+
+	} // cuenta
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Pruebas de los abandonos.
+	 *
+	 * Primero, la hebra 0 entra y se queda dentro un rato largo; las
+	 * demás intentan entrar con un plazo menor y deben abandonar
+	 * todas. Cuando la 0 sale, deben poder entrar sin problemas.
+	 *
+	 * Después, todas las hebras suman entrando con plazos aleatorios
+	 * muy cortos y reintentando cuando abandonan, de modo que se
+	 * abandona en todas las posiciones de la cola. La suma final
+	 * debe ser la esperada.
+	 *
+	 * @param args Número de hebras y entradas por hebra (opcionales).
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws InterruptedException {
+
+		final int numHebras = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+		final int numVeces = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+
+		// 1: hebra parada dentro de la sección crítica.
+		final CLH cerrojo = new CLH(numHebras);
+		cerrojo.entradaSeccionCritica(0);
+		final AtomicInteger abandonos = new AtomicInteger(0);
+		Thread[] hebras = new Thread[numHebras];
+		for (int h = 1; h < numHebras; ++h) {
+			final int numHebra = h;
+			hebras[h] = new Thread("Hebra" + h) {
+				public void run() {
+					if (!cerrojo.intentaEntradaSeccionCritica(numHebra, 50, TimeUnit.MILLISECONDS))
+						abandonos.incrementAndGet();
+					else
+						cerrojo.salidaSeccionCritica(numHebra);
+				}
+			};
+			hebras[h].start();
+		}
+		for (int h = 1; h < numHebras; ++h)
+			hebras[h].join();
+		cerrojo.salidaSeccionCritica(0);
+		System.out.println("Con la hebra 0 dentro abandonan " + abandonos.get()
+		                   + " de " + (numHebras - 1));
+		if (abandonos.get() != numHebras - 1)
+			System.out.println("¡¡¡NO COINCIDEN!!!");
+		for (int h = 0; h < numHebras; ++h) {
+			if (!cerrojo.intentaEntradaSeccionCritica(h, 1, TimeUnit.SECONDS)) {
+				System.out.println("¡¡¡La hebra " + h + " no puede entrar después!!!");
+				continue;
+			}
+			cerrojo.salidaSeccionCritica(h);
+		}
+
+		// 2: abandonos en cualquier posición de la cola.
+		final CLH cerrojo2 = new CLH(numHebras);
+		final Carga carga = cerrojo2.creaCarga(10);
+		final AtomicInteger abandonos2 = new AtomicInteger(0);
+		final CountDownLatch salida = new CountDownLatch(1);
+		for (int h = 0; h < numHebras; ++h) {
+			final int numHebra = h;
+			hebras[h] = new Thread("Hebra" + h) {
+				public void run() {
+					try {
+						salida.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+					for (int i = 0; i < numVeces; ++i) {
+						while (!cerrojo2.intentaEntradaSeccionCritica(numHebra,
+						               aleatorio.nextInt(20000), TimeUnit.NANOSECONDS))
+							abandonos2.incrementAndGet();
+						carga.seccionCritica();
+						cerrojo2.salidaSeccionCritica(numHebra);
+					}
+				}
+			};
+			hebras[h].start();
+		}
+		salida.countDown();
+		for (Thread t : hebras)
+			t.join();
+		long resultadoEsperado = 10L * numVeces * numHebras;
+		System.out.println("Con plazos cortos: " + abandonos2.get() + " abandonos, suma "
+		                   + carga.getSuma());
+		System.out.println("Esperábamos " + resultadoEsperado);
+		if (carga.getSuma() != resultadoEsperado)
+			System.out.println("¡¡¡NO COINCIDEN!!!");
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Nodo de la cola.
+	 */
+	static class Nodo {
+		/**
+		 * null mientras su hebra espera o está dentro; LIBRE cuando
+		 * ha salido; si ha abandonado, el nodo de su predecesor.
+		 */
+		public volatile Nodo anterior = null;
+	} // class Nodo
+
+	/**
+	 * Marca de nodo libre.
+	 */
+	protected static final Nodo LIBRE = new Nodo();
+
+	/**
+	 * Último nodo de la cola. Nunca es null: al principio es un nodo
+	 * libre.
+	 */
+	protected final AtomicReference<Nodo> _cola;
+
+	/**
+	 * Nodo que usará cada hebra en su siguiente entrada.
+	 */
+	protected final Nodo[] _nodos;
+
+	/**
+	 * Predecesor de cada hebra que está dentro; al salir pasa a ser
+	 * su nodo.
+	 */
+	protected final Nodo[] _predecesores;
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
+
+} // CLH
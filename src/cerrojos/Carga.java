@@ -0,0 +1,153 @@
+package cerrojos;
+
+/**
+ * Carga de trabajo de la sección crítica: lo mismo que hace el run()
+ * de las prácticas, sumar NUMERO_SUMADO de uno en uno a _suma.
+ */
+public class Carga {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numeroSumado Valor que se suma en cada entrada en la
+	 * sección crítica (el NUMERO_SUMADO de las prácticas).
+	 */
+	public Carga(int numeroSumado) {
+
+		this(numeroSumado, 0);
+
+	} // constructor
+
+	/**
+	 * Constructor para cargas que no empiezan de cero, como
+	 * persistencia.CargaDuradera, que sigue desde lo que había en su
+	 * diario.
+	 *
+	 * @param numeroSumado Valor que se suma en cada entrada en la
+	 * sección crítica.
+	 * @param sumaInicial Valor inicial de _suma.
+	 */
+	protected Carga(int numeroSumado, long sumaInicial) {
+
+		_numeroSumado = numeroSumado;
+		_sumaInicial = sumaInicial;
+		_suma = sumaInicial;
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * Cuerpo de la sección crítica. Debe llamarse entre
+	 * entradaSeccionCritica() y salidaSeccionCritica().
+	 */
+	public void seccionCritica() {
+
+		_suma = sumaN(_suma, _numeroSumado);
+
+	} // seccionCritica
+
+	/**
+	 * Se llama después de salidaSeccionCritica(), y vuelve cuando la
+	 * operación está confirmada. Aquí no hay nada que esperar; con
+	 * persistencia.CargaDuradera, espera a que esté en disco.
+	 */
+	public void confirma() {
+
+	} // confirma
+
+	//-----------------------------------------------------
+
+	/**
+	 * Devuelve el valor del atributo _suma.
+	 *
+	 * @return Valor del atributo _suma.
+	 */
+	public long getSuma() {
+
+		return _suma;
+
+	} // getSuma
+
+	/**
+	 * Devuelve el valor con el que empezó _suma: lo sumado en esta
+	 * ejecución es getSuma() - getSumaInicial().
+	 *
+	 * @return Valor inicial de _suma (0 salvo en cargas duraderas).
+	 */
+	public long getSumaInicial() {
+
+		return _sumaInicial;
+
+	} // getSumaInicial
+
+	//-----------------------------------------------------
+
+	/**
+	 * Devuelve el valor que se suma en cada operación.
+	 *
+	 * @return NUMERO_SUMADO.
+	 */
+	public int getNumeroSumado() {
+
+		return _numeroSumado;
+
+	} // getNumeroSumado
+
+	//-----------------------------------------------------
+
+	/**
+	 * Método estático que devuelve acumulador + n. Hace la
+	 * suma de uno en uno con un for.
+	 *
+	 * @param acumulador Valor inicial.
+	 * @param n Valor a sumar
+	 * @return acumulador + n
+	 */
+	protected static long sumaN(long acumulador, int n) {
+
+		long total = acumulador;
+		for (int i = 0; i < n; ++i)
+			total += 1;
+		return total;
+
+	} // sumaN
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Valor sumado en cada operación.
+	 */
+	protected final int _numeroSumado;
+
+	/**
+	 * Atributo con el valor acumulado donde se realiza la suma.
+	 * Hace las veces de variable compartida entre las hebras.
+	 */
+	private volatile long _suma;
+
+	/**
+	 * Valor inicial de _suma.
+	 */
+	private final long _sumaInicial;
+
+	/**
+	 * Carga seguida de 128 bytes de relleno, para que _suma no comparta
+	 * línea de caché con lo que se reserve después (ver
+	 * medidas.Relleno).
+	 */
+	public static class ConRelleno extends Carga {
+
+		public ConRelleno(int numeroSumado) {
+
+			super(numeroSumado);
+
+		} // constructor
+
+		long r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15;
+
+	} // class ConRelleno
+
+} // Carga
@@ -0,0 +1,87 @@
+package cerrojos;
+
+import medidas.Contadores;
+import medidas.Relleno;
+import persistencia.CargaDuradera;
+
+/**
+ * Motor de exclusión mutua: la pareja de métodos entradaSeccionCritica()
+ * y salidaSeccionCritica() que en las prácticas p03 a p11 es lo único
+ * que cambia de una clase a otra.
+ *
+ * Las hebras se identifican con un número de hebra entre 0 y
+ * maxHebras() - 1, igual que el numHebra de Dekker y Peterson. Los
+ * cerrojos que no lo necesitan (TestAndSet) simplemente lo ignoran.
+ *
+ * La clase Cerrojos tiene el registro de todas las implementaciones
+ * por nombre, y Motor permite elegir una en tiempo de ejecución.
+ */
+public interface Cerrojo {
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica. Vuelve
+	 * únicamente cuando se garantice que sólo la hebra actual
+	 * estará dentro de la sección crítica.
+	 *
+	 * @param numHebra Número de hebra que quiere entrar en la
+	 * sección crítica.
+	 */
+	void entradaSeccionCritica(int numHebra);
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la
+	 * sección crítica.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección
+	 * crítica.
+	 */
+	void salidaSeccionCritica(int numHebra);
+
+	/**
+	 * Máximo número de hebras que soporta el cerrojo. Los de
+	 * Dekker y Peterson son sólo para dos.
+	 *
+	 * @return Número máximo de hebras.
+	 */
+	default int maxHebras() {
+		return 2;
+	}
+
+	/**
+	 * Permite al cerrojo conocer las hebras que lo van a usar,
+	 * antes de arrancarlas. Los Peterson de p09 y p11 pueden
+	 * usarlas para despertar a la otra hebra.
+	 *
+	 * @param hebras Hebras, indexadas por su número de hebra.
+	 */
+	default void registraHebras(Thread[] hebras) {
+	}
+
+	/**
+	 * Activa (o desactiva, con null) los contadores de lo que hace
+	 * cada hebra mientras espera en entradaSeccionCritica(). Los
+	 * cerrojos que no los soportan no cuentan nada.
+	 *
+	 * @param contadores Contadores, o null.
+	 */
+	default void setContadores(Contadores contadores) {
+	}
+
+	/**
+	 * Crea la carga de trabajo (lo que se hace dentro de la
+	 * sección crítica) que se usará con este cerrojo. Con la
+	 * propiedad cerrojos.relleno, la suma va en su propia línea de
+	 * caché; con cerrojos.diario, es una persistencia.CargaDuradera.
+	 *
+	 * @param numeroSumado Valor que se suma en cada operación.
+	 * @return Carga de trabajo.
+	 */
+	default Carga creaCarga(int numeroSumado) {
+		Carga duradera = CargaDuradera.dePropiedades(numeroSumado);
+		if (duradera != null)
+			return duradera;
+		return Relleno.activo() ? new Carga.ConRelleno(numeroSumado)
+		                        : new Carga(numeroSumado);
+	}
+
+} // interface Cerrojo
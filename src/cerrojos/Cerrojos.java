@@ -0,0 +1,262 @@
+package cerrojos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Registro de todos los cerrojos por nombre. Incluye adaptadores
+ * para los protocolos de entrada y salida de las prácticas p03 a
+ * p12, que se registran con el nombre completo de su clase
+ * (por ejemplo "p07.DekkerFinal").
+ */
+public class Cerrojos {
+
+	/**
+	 * Crea un cerrojo nuevo.
+	 *
+	 * @param nombre Nombre con el que se registró.
+	 * @param numHebras Número de hebras que lo usarán. Los cerrojos
+	 * de N hebras se dimensionan con él; los demás lo ignoran, y hay
+	 * que comprobar con maxHebras() si lo admiten.
+	 * @return Cerrojo nuevo, sin usar.
+	 * @throws IllegalArgumentException si no hay ninguno con ese nombre.
+	 */
+	public static Cerrojo crea(String nombre, int numHebras) {
+
+		IntFunction<Cerrojo> fabrica = _fabricas.get(nombre);
+		if (fabrica == null)
+			throw new IllegalArgumentException("Cerrojo desconocido: " + nombre
+			                                   + ". Conocidos: " + nombres());
+		return fabrica.apply(numHebras);
+
+	} // crea
+
+	/**
+	 * Número máximo de hebras de un cerrojo. Si se registró con su
+	 * máximo, no lo crea; si no, crea uno y se lo pregunta.
+	 *
+	 * @param nombre Nombre con el que se registró.
+	 * @param numHebras Número de hebras que lo usarían.
+	 * @return maxHebras() del cerrojo.
+	 * @throws IllegalArgumentException si no hay ninguno con ese nombre.
+	 */
+	public static int maxHebras(String nombre, int numHebras) {
+
+		Integer max = _maxHebras.get(nombre);
+		if (max != null)
+			return max;
+		return crea(nombre, numHebras).maxHebras();
+
+	} // maxHebras
+
+	/**
+	 * Nombres de todos los cerrojos registrados, en orden de registro.
+	 *
+	 * @return Lista de nombres.
+	 */
+	public static List<String> nombres() {
+
+		return new ArrayList<String>(_fabricas.keySet());
+
+	} // nombres
+
+	/**
+	 * Registra un cerrojo nuevo para un número fijo de hebras.
+	 *
+	 * @param nombre Nombre con el que se le conocerá.
+	 * @param fabrica Crea una instancia nueva en cada llamada.
+	 */
+	public static void registra(String nombre, Supplier<Cerrojo> fabrica) {
+
+		_fabricas.put(nombre, numHebras -> fabrica.get());
+		_maxHebras.remove(nombre);
+
+	} // registra
+
+	/**
+	 * Registra un cerrojo nuevo para un número fijo de hebras, con su
+	 * número máximo de hebras, para los cerrojos caros de crear (que
+	 * así no se crean sólo para comprobarlo).
+	 *
+	 * @param nombre Nombre con el que se le conocerá.
+	 * @param fabrica Crea una instancia nueva en cada llamada.
+	 * @param maxHebras Lo que devuelve su maxHebras().
+	 */
+	public static void registra(String nombre, Supplier<Cerrojo> fabrica, int maxHebras) {
+
+		registra(nombre, fabrica);
+		_maxHebras.put(nombre, maxHebras);
+
+	} // registra
+
+	/**
+	 * Registra un cerrojo nuevo que se dimensiona según el número
+	 * de hebras.
+	 *
+	 * @param nombre Nombre con el que se le conocerá.
+	 * @param fabrica Crea una instancia nueva para el número de
+	 * hebras que recibe.
+	 */
+	public static void registraN(String nombre, IntFunction<Cerrojo> fabrica) {
+
+		_fabricas.put(nombre, fabrica);
+		_maxHebras.remove(nombre);
+
+	} // registraN
+
+	//-----------------------------------------------------
+	// Adaptadores de las prácticas. Los métodos de entrada y
+	// salida son protected, así que heredamos de cada clase.
+	//-----------------------------------------------------
+
+	static class Dekker1 extends p03.Dekker1 implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(n); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(n); }
+	} // class Dekker1
+
+	static class Dekker2 extends p04.Dekker2 implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(n); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(n); }
+	} // class Dekker2
+
+	static class Dekker3 extends p05.Dekker3 implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(n); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(n); }
+	} // class Dekker3
+
+	static class Dekker4 extends p06.Dekker4 implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(n); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(n); }
+	} // class Dekker4
+
+	static class DekkerFinal extends p07.DekkerFinal implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(n); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(n); }
+	} // class DekkerFinal
+
+	static class Peterson08 extends p08.Peterson implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(n); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(n); }
+	} // class Peterson08
+
+	static class Peterson09 extends p09.Peterson implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(n); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(n); }
+		public void registraHebras(Thread[] h) { setThreads(h[0], h[h.length - 1]); }
+	} // class Peterson09
+
+	static class Peterson11 extends p11.Peterson implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(n); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(n); }
+		public void registraHebras(Thread[] h) { setThreads(h[0], h[h.length - 1]); }
+	} // class Peterson11
+
+	static class TestAndSet09a extends p09.a.TestAndSet implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(); }
+		public int maxHebras() { return Integer.MAX_VALUE; }
+	} // class TestAndSet09a
+
+	static class TestAndSet09b extends p09.b.TestAndSet implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(); }
+		public int maxHebras() { return Integer.MAX_VALUE; }
+	} // class TestAndSet09b
+
+	static class TestAndSet10a extends p10.a.TestAndSet implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(); }
+		public int maxHebras() { return Integer.MAX_VALUE; }
+	} // class TestAndSet10a
+
+	static class TestAndSet10b extends p10.b.TestAndSet implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(); }
+		public int maxHebras() { return Integer.MAX_VALUE; }
+	} // class TestAndSet10b
+
+	static class TestAndSet11 extends p11.TestAndSet implements Cerrojo {
+		public void entradaSeccionCritica(int n) { super.entradaSeccionCritica(); }
+		public void salidaSeccionCritica(int n) { super.salidaSeccionCritica(); }
+		public int maxHebras() { return Integer.MAX_VALUE; }
+	} // class TestAndSet11
+
+	/**
+	 * p12.b no tiene sección crítica: la suma se hace con
+	 * AtomicLong.addAndGet(). Entrada y salida no hacen nada, y la
+	 * carga suma de golpe con la operación atómica.
+	 */
+	static class Atomica12b implements Cerrojo {
+		public void entradaSeccionCritica(int n) { }
+		public void salidaSeccionCritica(int n) { }
+		public int maxHebras() { return Integer.MAX_VALUE; }
+		public Carga creaCarga(int numeroSumado) {
+			return new Carga(numeroSumado) {
+				public void seccionCritica() { _suma.addAndGet(_numeroSumado); }
+				public long getSuma() { return _suma.get(); }
+				AtomicLong _suma = new AtomicLong(0);
+			};
+		}
+	} // class Atomica12b
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Fábricas de cerrojos, por nombre.
+	 */
+	private static final Map<String, IntFunction<Cerrojo>> _fabricas =
+	                                 new LinkedHashMap<String, IntFunction<Cerrojo>>();
+
+	/**
+	 * Máximo de hebras de los cerrojos registrados con él.
+	 */
+	private static final Map<String, Integer> _maxHebras = new HashMap<String, Integer>();
+
+	static {
+		registra("p03.Dekker1", Dekker1::new);
+		registra("p04.Dekker2", Dekker2::new);
+		registra("p05.Dekker3", Dekker3::new);
+		registra("p06.Dekker4", Dekker4::new);
+		registra("p07.DekkerFinal", DekkerFinal::new);
+		registra("p08.Peterson", Peterson08::new);
+		registra("p09.Peterson", Peterson09::new);
+		registra("p11.Peterson", Peterson11::new);
+		registra("p09.a.TestAndSet", TestAndSet09a::new);
+		registra("p09.b.TestAndSet", TestAndSet09b::new);
+		registra("p10.a.TestAndSet", TestAndSet10a::new);
+		registra("p10.b.TestAndSet", TestAndSet10b::new);
+		registra("p11.TestAndSet", TestAndSet11::new);
+		registra("p12.b.ExclusionMutuaAtomica", Atomica12b::new);
+		registraN("filtro", Filtro::new);
+		registraN("panaderia", Panaderia::new);
+		registraN("torneo.dekker", n -> new Torneo(n, DekkerFinal::new));
+		registraN("torneo.peterson", n -> new Torneo(n, Peterson08::new));
+		registra("tas", () -> new TestAndTestAndSet(false));
+		registra("ttas", () -> new TestAndTestAndSet(true));
+		registra("retroceso", TestAndSetRetroceso::new);
+		// Calibrar tarda hasta un segundo.
+		registra("retroceso.calibrado", TestAndSetRetroceso::calibrado, Integer.MAX_VALUE);
+		registra("ticket", Ticket::new);
+		registraN("anderson", Anderson::new);
+		registraN("mcs", MCS::new);
+		registraN("clh", CLH::new);
+		registraN("cohorte", Cohorte::configurado);
+		registraN("cohorte.2", n -> new Cohorte(n, new int[] { 0, 1 },
+		                                        Cohorte.MAX_TRASPASOS_POR_DEFECTO));
+		for (Barreras b : Barreras.values()) {
+			if (b == Barreras.SIN_BARRERA)
+				continue; // No es exclusión mutua; sólo para Barreras.main().
+			registra("dekker." + b.nombre, () -> new DekkerBarreras(b));
+			registra("peterson." + b.nombre, () -> new PetersonBarreras(b));
+		}
+	}
+
+} // Cerrojos
@@ -0,0 +1,359 @@
+package cerrojos;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import medidas.Contadores;
+
+/**
+ * Cerrojo de cohortes: un cerrojo global más un cerrojo local por
+ * cada grupo ("cluster") de núcleos, normalmente cada socket.
+ *
+ * Pasar el cerrojo entre núcleos de sockets distintos cuesta varias
+ * veces más que entre núcleos del mismo socket (las líneas de caché
+ * tienen que cruzar la interconexión). Aquí cada hebra pertenece a un
+ * cluster. Para entrar coge primero el cerrojo local de su cluster
+ * (un Ticket) y después el global (un TestAndTestAndSet). Al salir,
+ * si hay otra hebra de su cluster esperando en el cerrojo local, le
+ * pasa el local sin soltar el global: la otra hereda el global y
+ * entra sin tocarlo. Así el cerrojo, y los datos de la sección
+ * crítica, se quedan en el mismo socket. Para no dejar sin entrar a
+ * los demás clusters, como mucho se hacen maxTraspasos traspasos
+ * locales seguidos; después se suelta el global.
+ *
+ * El global lo coge una hebra y lo puede soltar otra de su cluster,
+ * así que tiene que ser un cerrojo al que no le importe qué hebra lo
+ * suelta, como los TestAndSet.
+ *
+ * Java no permite fijar una hebra a un núcleo, así que el cluster de
+ * cada hebra se decide por su número de hebra:
+ *
+ * 	- Con la propiedad cerrojos.cohorte.mapa (por ejemplo
+ * 	  -Dcerrojos.cohorte.mapa=0,0,1,1), el cluster de cada número de
+ * 	  hebra (si hay más hebras, se vuelve a empezar).
+ * 	- Si no, según la topología de /sys/devices/system/cpu: la hebra
+ * 	  i es del socket (physical_package_id) de la i-ésima CPU en
+ * 	  línea, que es donde estaría si se fijan en ese orden.
+ *
+ * La propiedad cerrojos.cohorte.traspasos cambia maxTraspasos. Las
+ * dos se pasan también a las JVM hijas de medidas.Banco y Barrido.
+ * "cohorte.2" usa siempre dos clusters alternos, para probarlo en
+ * cualquier máquina. Para compararlo con los cerrojos "planos":
+ *
+ * 	java cerrojos.Cohorte [hebras] [opsPorHebra]
+ * 	java medidas.Barrido -p ttas,ticket,mcs,cohorte
+ */
+public class Cohorte implements Cerrojo {
+
+	/**
+	 * Traspasos locales seguidos, como mucho, por defecto.
+	 */
+	public static final int MAX_TRASPASOS_POR_DEFECTO = 64;
+
+	/**
+	 * Crea un cerrojo con el mapa y los traspasos de las propiedades
+	 * cerrojos.cohorte.mapa y cerrojos.cohorte.traspasos o, si no
+	 * están, con la topología de /sys y los traspasos por defecto.
+	 *
+	 * @param numHebras Número de hebras (numeradas desde 0) que
+	 * usarán el cerrojo.
+	 * @return Cerrojo nuevo.
+	 */
+	public static Cohorte configurado(int numHebras) {
+
+		String mapa = System.getProperty("cerrojos.cohorte.mapa");
+		int[] clusters = (mapa != null) ? enteros(mapa) : clustersDeCpus();
+		int maxTraspasos = Integer.getInteger("cerrojos.cohorte.traspasos",
+		                                      MAX_TRASPASOS_POR_DEFECTO);
+		return new Cohorte(numHebras, clusters, maxTraspasos);
+
+	} // configurado
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numHebras Número de hebras (numeradas desde 0) que
+	 * usarán el cerrojo.
+	 * @param mapa Cluster de cada número de hebra (el de la hebra i
+	 * es mapa[i % mapa.length]).
+	 * @param maxTraspasos Traspasos locales seguidos, como mucho,
+	 * antes de soltar el cerrojo global.
+	 */
+	public Cohorte(int numHebras, int[] mapa, int maxTraspasos) {
+
+		_clusterDeHebra = new int[numHebras];
+		int numClusters = 0;
+		for (int i = 0; i < numHebras; ++i) {
+			_clusterDeHebra[i] = mapa[i % mapa.length];
+			numClusters = Math.max(numClusters, _clusterDeHebra[i] + 1);
+		}
+		_clusters = new Cluster[numClusters];
+		for (int c = 0; c < numClusters; ++c)
+			_clusters[c] = new Cluster();
+		_maxTraspasos = maxTraspasos;
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de hebra (de 0 a numHebras - 1) que
+	 * quiere entrar en la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		Cluster cluster = _clusters[_clusterDeHebra[numHebra]];
+		cluster.local.entradaSeccionCritica(numHebra);
+		if (!cluster.globalHeredado)
+			_global.entradaSeccionCritica(numHebra);
+
+		// ¡Está libre!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica. Si puede, pasa el cerrojo a otra hebra de su cluster.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		// Los atributos del cluster sólo los toca quien tiene su
+		// cerrojo local.
+		Cluster cluster = _clusters[_clusterDeHebra[numHebra]];
+		if ((cluster.traspasos < _maxTraspasos) && cluster.local.hayEsperando()) {
+			cluster.traspasos++;
+			cluster.traspasosTotales++;
+			cluster.globalHeredado = true;
+		}
+		else {
+			cluster.traspasos = 0;
+			cluster.globalHeredado = false;
+			cluster.liberacionesGlobales++;
+			_global.salidaSeccionCritica(numHebra);
+		}
+		cluster.local.salidaSeccionCritica(numHebra);
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() {
+
+		return _clusterDeHebra.length;
+
+	} // maxHebras
+
+	/**
+	 * Los contadores dados reciben lo que se espera en los cerrojos
+	 * locales, que es por donde pasa cada entrada. Lo que se espera
+	 * después en el global va a otros contadores propios (ver
+	 * getContadoresGlobal()), para no contar dos veces una misma
+	 * entrada y que los totales se puedan comparar con los de los
+	 * demás cerrojos.
+	 *
+	 * @param contadores Contadores, o null.
+	 */
+	public void setContadores(Contadores contadores) {
+
+		_contadoresGlobal = (contadores != null) ? new Contadores(maxHebras()) : null;
+		_global.setContadores(_contadoresGlobal);
+		for (Cluster c : _clusters)
+			c.local.setContadores(contadores);
+
+	} // setContadores
+
+	/**
+	 * Contadores de las esperas en el cerrojo global, o null si no se
+	 * han pedido contadores con setContadores().
+	 */
+	public Contadores getContadoresGlobal() {
+
+		return _contadoresGlobal;
+
+	} // getContadoresGlobal
+
+	public int getNumClusters() {
+
+		return _clusters.length;
+
+	} // getNumClusters
+
+	/**
+	 * Veces que se ha pasado el cerrojo dentro de un cluster, sin
+	 * soltar el global. Sólo es exacto sin hebras dentro.
+	 */
+	public long getTraspasosLocales() {
+
+		long total = 0;
+		for (Cluster c : _clusters)
+			total += c.traspasosTotales;
+		return total;
+
+	} // getTraspasosLocales
+
+	/**
+	 * Veces que se ha soltado el cerrojo global. Sólo es exacto sin
+	 * hebras dentro.
+	 */
+	public long getLiberacionesGlobales() {
+
+		long total = 0;
+		for (Cluster c : _clusters)
+			total += c.liberacionesGlobales;
+		return total;
+
+	} // getLiberacionesGlobales
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Cluster de cada CPU en línea, en orden, según su socket
+	 * (physical_package_id en /sys/devices/system/cpu). Los sockets
+	 * se numeran desde 0 en el orden en que aparecen. Si no se puede
+	 * leer la topología (no es Linux), todas son del cluster 0.
+	 *
+	 * @return Cluster de cada CPU en línea.
+	 */
+	public static int[] clustersDeCpus() {
+
+		Path base = Paths.get("/sys/devices/system/cpu");
+		try {
+			List<Integer> cpus = rangos(new String(Files.readAllBytes(base.resolve("online"))).trim());
+			Map<String, Integer> sockets = new HashMap<String, Integer>();
+			int[] clusters = new int[cpus.size()];
+			for (int i = 0; i < clusters.length; ++i) {
+				Path id = base.resolve("cpu" + cpus.get(i)).resolve("topology")
+				              .resolve("physical_package_id");
+				String socket = new String(Files.readAllBytes(id)).trim();
+				Integer c = sockets.get(socket);
+				if (c == null) {
+					c = sockets.size();
+					sockets.put(socket, c);
+				}
+				clusters[i] = c;
+			}
+			return clusters;
+		} catch (IOException | RuntimeException e) {
+			return new int[] { 0 };
+		}
+
+	} // clustersDeCpus
+
+	/**
+	 * Convierte una lista como la de /sys/devices/system/cpu/online
+	 * ("0-3,8-11") en la lista de números.
+	 */
+	static List<Integer> rangos(String lista) {
+
+		List<Integer> r = new ArrayList<Integer>();
+		for (String parte : lista.split(",")) {
+			String[] extremos = parte.trim().split("-");
+			int desde = Integer.parseInt(extremos[0].trim());
+			int hasta = (extremos.length > 1) ? Integer.parseInt(extremos[1].trim()) : desde;
+			for (int i = desde; i <= hasta; ++i)
+				r.add(i);
+		}
+		return r;
+
+	} // rangos
+
+	static int[] enteros(String lista) {
+
+		String[] partes = lista.split(",");
+		int[] r = new int[partes.length];
+		for (int i = 0; i < partes.length; ++i)
+			r[i] = Integer.parseInt(partes[i].trim());
+		return r;
+
+	} // enteros
+
+	/**
+	 * Muestra los clusters detectados y cuántas veces se queda el
+	 * cerrojo en el cluster en una ejecución corta.
+	 *
+	 * @param args Número de hebras y operaciones por hebra
+	 * (opcionales).
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws InterruptedException {
+
+		int numHebras = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+		long opsPorHebra = (args.length > 1) ? Long.parseLong(args[1]) : 100000;
+
+		int[] cpus = clustersDeCpus();
+		System.out.print("Cluster de cada CPU en línea:");
+		for (int c : cpus)
+			System.out.print(" " + c);
+		System.out.println();
+
+		for (String nombre : new String[] { "cohorte", "cohorte.2" }) {
+			Cohorte cerrojo = (Cohorte) Cerrojos.crea(nombre, numHebras);
+			Carga carga = cerrojo.creaCarga(100);
+			long nanos = Motor.ejecuta(cerrojo, carga, numHebras, opsPorHebra,
+			                           TimeUnit.SECONDS.toNanos(60));
+			if (nanos < 0) {
+				System.out.println(nombre + ": ¡¡¡BLOQUEADO!!!");
+				continue;
+			}
+			long locales = cerrojo.getTraspasosLocales();
+			long globales = cerrojo.getLiberacionesGlobales();
+			System.out.println(String.format(Locale.ROOT, "%s: %d clusters, %.1f ops/s, %d traspasos "
+			        + "locales, %d liberaciones globales (%.1f%% locales)",
+			        nombre, cerrojo.getNumClusters(), numHebras * opsPorHebra * 1e9 / nanos,
+			        locales, globales, 100.0 * locales / Math.max(1, locales + globales)));
+			if (carga.getSuma() != 100L * numHebras * opsPorHebra)
+				System.out.println("¡¡¡NO COINCIDEN!!!");
+		}
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Estado de un cluster. Salvo el cerrojo local, todo lo protege
+	 * el propio cerrojo local.
+	 */
+	static class Cluster {
+		public final Ticket local = new Ticket();
+		/** Si la hebra que entra recibe el global de la anterior. */
+		public boolean globalHeredado = false;
+		/** Traspasos locales seguidos. */
+		public int traspasos = 0;
+		public long traspasosTotales = 0;
+		public long liberacionesGlobales = 0;
+	} // class Cluster
+
+	/**
+	 * Cerrojo global.
+	 */
+	protected final TestAndTestAndSet _global = new TestAndTestAndSet(true);
+
+	/**
+	 * Contadores del cerrojo global.
+	 */
+	protected Contadores _contadoresGlobal = null;
+
+	protected final Cluster[] _clusters;
+
+	/**
+	 * Cluster de cada número de hebra.
+	 */
+	protected final int[] _clusterDeHebra;
+
+	protected final int _maxTraspasos;
+
+} // Cohorte
@@ -0,0 +1,111 @@
+package cerrojos;
+
+/**
+ * Algoritmo de Dekker (p07.DekkerFinal) con el orden de memoria
+ * justo, elegido con Barreras.
+ *
+ * Como en PetersonBarreras, los flags y el turno están en un int[]
+ * separados por relleno, y se acceden con VarHandle. Hace falta una
+ * barrera completa cada vez que se levanta el flag propio antes de
+ * mirar el de la otra hebra: al empezar, y al volver a levantarlo
+ * después de haber cedido el turno.
+ *
+ * 	java cerrojos.Barreras
+ * 	java medidas.Banco -p p07.DekkerFinal,dekker.adqlib,dekker.opaco -h 2
+ */
+public class DekkerBarreras implements Cerrojo {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param barreras Orden de memoria de los accesos.
+	 */
+	public DekkerBarreras(Barreras barreras) {
+
+		_barreras = barreras;
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de hebra (0 o 1) que quiere entrar
+	 * en la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		Barreras b = _barreras;
+		int otraHebra = numHebra ^ 0x1;
+
+		b.anuncia(_estado, flag(numHebra), 1);
+		b.barrera();
+		while (b.lee(_estado, flag(otraHebra)) != 0) {
+			if (b.lee(_estado, TURNO) == otraHebra) {
+				// El turno es de la otra hebra: nos retiramos
+				// hasta que nos lo dé.
+				b.anuncia(_estado, flag(numHebra), 0);
+				while (b.lee(_estado, TURNO) == otraHebra)
+					; // Espera activa
+				b.anuncia(_estado, flag(numHebra), 1);
+				b.barrera();
+			}
+		}
+		b.trasEsperar();
+
+		// ¡Está libre!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica. Da el turno a la otra hebra y baja el flag.
+	 *
+	 * @param numHebra Número de hebra (0 o 1) que abandona la sección
+	 * crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		_barreras.suelta(_estado, TURNO, numHebra ^ 0x1);
+		_barreras.suelta(_estado, flag(numHebra), 0);
+
+	} // salidaSeccionCritica
+
+	public Barreras getBarreras() {
+
+		return _barreras;
+
+	} // getBarreras
+
+	//-----------------------------------------------------
+	//                    Métodos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Posición en _estado del flag de una hebra.
+	 */
+	private static int flag(int numHebra) {
+
+		return (numHebra + 1) * Barreras.SEPARACION;
+
+	} // flag
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Posición en _estado del turno.
+	 */
+	protected static final int TURNO = 3 * Barreras.SEPARACION;
+
+	/**
+	 * Flags de las dos hebras (1 si quiere entrar) y turno, separados
+	 * por relleno.
+	 */
+	protected final int[] _estado = new int[4 * Barreras.SEPARACION];
+
+	protected final Barreras _barreras;
+
+} // DekkerBarreras
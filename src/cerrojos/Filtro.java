@@ -0,0 +1,145 @@
+package cerrojos;
+
+import medidas.Contadores;
+
+/**
+ * Cerrojo "filtro": generalización del algoritmo de Peterson
+ * (p08.Peterson) a N hebras.
+ *
+ * Hay N - 1 niveles. Para entrar en la sección crítica, una hebra
+ * tiene que atravesarlos todos, y en cada nivel se comporta como en
+ * Peterson: anuncia que está en ese nivel (como el _enSeccionCritica
+ * de Peterson) y se pone como "víctima" del nivel (como el _turno de
+ * Peterson, pero cediendo en lugar de dando el turno). Espera
+ * mientras haya otra hebra en su nivel o en uno superior y siga
+ * siendo ella la víctima. En cada nivel se queda al menos una hebra
+ * (la última víctima), así que al último sólo llega una.
+ *
+ * Cada entrada recorre N - 1 niveles y en cada uno mira a las otras
+ * N - 1 hebras, así que su coste crece como N². Para compararlo
+ * con el original de dos hebras según crece el número de hebras:
+ *
+ * 	java medidas.Barrido -p p08.Peterson,filtro
+ */
+public class Filtro implements Cerrojo {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numHebras Número de hebras (numeradas desde 0) que
+	 * usarán el cerrojo.
+	 */
+	public Filtro(int numHebras) {
+
+		_numHebras = numHebras;
+		_nivel = new Entero[numHebras];
+		for (int i = 0; i < numHebras; ++i)
+			_nivel[i] = new Entero();
+		_victima = new Entero[numHebras];
+		for (int i = 0; i < numHebras; ++i)
+			_victima[i] = new Entero();
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de hebra (de 0 a numHebras - 1) que
+	 * quiere entrar en la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		int vueltas = 0, esperas = 0;
+		for (int nivel = 1; nivel < _numHebras; ++nivel) {
+			_nivel[numHebra].valor = nivel;
+			_victima[nivel].valor = numHebra;
+			boolean espera = false;
+			while ((_victima[nivel].valor == numHebra) && hayOtraEnNivel(numHebra, nivel)) {
+				++vueltas;
+				espera = true;
+			}
+			if (espera)
+				++esperas;
+		}
+		if ((_contadores != null) && (vueltas > 0)) {
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+			_contadores.suma(numHebra, Contadores.ESPERAS_TURNO, esperas);
+		}
+
+		// ¡Está libre!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		_nivel[numHebra].valor = 0;
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() {
+
+		return _numHebras;
+
+	} // maxHebras
+
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	//-----------------------------------------------------
+	//                    Métodos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Mira si alguna hebra distinta de la dada está en el nivel dado
+	 * o en uno superior.
+	 */
+	private boolean hayOtraEnNivel(int numHebra, int nivel) {
+
+		for (int k = 0; k < _numHebras; ++k)
+			if ((k != numHebra) && (_nivel[k].valor >= nivel))
+				return true;
+		return false;
+
+	} // hayOtraEnNivel
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Clase ("estructura") con un único entero. Lo importante del
+	 * entero es que es volátil.
+	 */
+	static class Entero {
+		public volatile int valor = 0;
+	} // class Entero
+
+	protected final int _numHebras;
+
+	/**
+	 * Nivel en el que está cada hebra. 0 si no quiere entrar.
+	 */
+	protected final Entero[] _nivel;
+
+	/**
+	 * Última hebra que llegó a cada nivel (el 0 no se usa).
+	 */
+	protected final Entero[] _victima;
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
+
+} // Filtro
@@ -0,0 +1,185 @@
+package cerrojos;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import medidas.Contadores;
+
+/**
+ * Cerrojo MCS (Mellor-Crummey y Scott): cola de espera enlazada en la
+ * que cada hebra espera sobre su propio nodo.
+ *
+ * Cada hebra tiene un nodo. Para entrar lo pone al final de la cola
+ * con getAndSet() sobre _cola y, si había alguien delante, se enlaza
+ * detrás de él y espera a que le avise. Al salir, avisa al nodo
+ * siguiente. Cada hebra sólo mira su nodo, que ella misma ha escrito
+ * antes (y que por tanto está en su caché o memoria local), así que
+ * escala aunque los núcleos no compartan caché. A diferencia de
+ * Anderson, no hace falta un array con una posición por hebra.
+ *
+ * Los nodos son de cada hebra y se reutilizan: cuando una hebra sale,
+ * nadie más tiene su nodo, y puede volver a usarlo en su siguiente
+ * entrada. No se reserva memoria al entrar.
+ *
+ * La espera es activa sólo un número de vueltas; después la hebra se
+ * aparca con LockSupport.park() (como p09.Peterson), y la que sale
+ * la despierta con unpark() si se ha aparcado. Así, con más hebras
+ * que núcleos, las que esperan no gastan el núcleo de la que
+ * está dentro.
+ *
+ * 	java medidas.Barrido -p p10.b.TestAndSet,mcs -h 2,4,8,16,32,64
+ */
+public class MCS implements Cerrojo {
+
+	/**
+	 * Vueltas de espera activa antes de aparcarse, por defecto.
+	 */
+	public static final int VUELTAS_POR_DEFECTO = 2000;
+
+	/**
+	 * Constructor con las vueltas por defecto.
+	 *
+	 * @param numHebras Número de hebras (numeradas desde 0) que
+	 * usarán el cerrojo.
+	 */
+	public MCS(int numHebras) {
+
+		this(numHebras, VUELTAS_POR_DEFECTO);
+
+	} // constructor
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numHebras Número de hebras (numeradas desde 0) que
+	 * usarán el cerrojo.
+	 * @param vueltasAntesDeAparcar Vueltas de espera activa antes de
+	 * aparcar la hebra.
+	 */
+	public MCS(int numHebras, int vueltasAntesDeAparcar) {
+
+		_nodos = new Nodo[numHebras];
+		for (int i = 0; i < numHebras; ++i)
+			_nodos[i] = new Nodo();
+		_vueltasAntesDeAparcar = vueltasAntesDeAparcar;
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de hebra (de 0 a numHebras - 1) que
+	 * quiere entrar en la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		Nodo yo = _nodos[numHebra];
+		yo.siguiente = null;
+		yo.esperando = true;
+		yo.aparcada = false;
+		yo.hebra = Thread.currentThread();
+
+		Nodo anterior = _cola.getAndSet(yo);
+		if (anterior == null)
+			return; // ¡Está libre!
+
+		anterior.siguiente = yo;
+		int vueltas = 0, aparcamientos = 0;
+		while (yo.esperando && (vueltas < _vueltasAntesDeAparcar))
+			++vueltas;
+		if (yo.esperando) {
+			// La que salga mirará aparcada después de poner esperando
+			// a false, así que o la ve, o nosotros vemos esperando a
+			// false y no nos aparcamos.
+			yo.aparcada = true;
+			while (yo.esperando) {
+				LockSupport.park(this);
+				++aparcamientos;
+			}
+		}
+		if (_contadores != null) {
+			_contadores.cuenta(numHebra, Contadores.ESPERAS_TURNO);
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+			_contadores.suma(numHebra, Contadores.SUSPENSIONES, aparcamientos);
+		}
+
+		// ¡Nos toca!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica. Avisa a la siguiente de la cola, si la hay.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		Nodo yo = _nodos[numHebra];
+		Nodo siguiente = yo.siguiente;
+		if (siguiente == null) {
+			if (_cola.compareAndSet(yo, null))
+				return; // No había nadie.
+			// Alguien se ha puesto detrás pero aún no se ha enlazado.
+			while ((siguiente = yo.siguiente) == null)
+				;
+		}
+		siguiente.esperando = false;
+		if (siguiente.aparcada) {
+			LockSupport.unpark(siguiente.hebra);
+			if (_contadores != null)
+				_contadores.cuenta(numHebra, Contadores.REANUDACIONES);
+		}
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() {
+
+		return _nodos.length;
+
+	} // maxHebras
+
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Nodo de la cola de una hebra.
+	 */
+	static class Nodo {
+		/** A true mientras la hebra tenga que esperar. */
+		public volatile boolean esperando = false;
+		/** Si la hebra se ha aparcado (o va a hacerlo). */
+		public volatile boolean aparcada = false;
+		/** Nodo que está detrás en la cola. */
+		public volatile Nodo siguiente = null;
+		/** Hebra dueña del nodo, para despertarla. */
+		public volatile Thread hebra = null;
+	} // class Nodo
+
+	/**
+	 * Último nodo de la cola, o null si el cerrojo está libre.
+	 */
+	protected final AtomicReference<Nodo> _cola = new AtomicReference<Nodo>(null);
+
+	/**
+	 * Nodo de cada hebra, por número de hebra.
+	 */
+	protected final Nodo[] _nodos;
+
+	protected final int _vueltasAntesDeAparcar;
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
+
+} // MCS
@@ -0,0 +1,281 @@
+package cerrojos;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import medidas.CerrojoJFR;
+import medidas.Contadores;
+import medidas.Equidad;
+
+/**
+ * Programa único que sustituye a los main() de las prácticas p03 a
+ * p12: elige el cerrojo, el número de hebras y la carga de trabajo
+ * en tiempo de ejecución.
+ *
+ * Cada hebra suma NUM_VECES veces NUMERO_SUMADO a la suma compartida,
+ * protegiéndola con el cerrojo elegido, y al final se compara el
+ * resultado con el esperado. Si se piden varios cerrojos, se ejecutan
+ * alternándolos durante varias rondas en la misma JVM, de modo que
+ * todos se miden con el JIT ya caliente (comparación A/B).
+ *
+ * La configuración se lee de un fichero de propiedades (-c) y se
+ * puede sobrescribir desde la línea de órdenes:
+ *
+ * 	cerrojos      -p   Lista de cerrojos separados por comas.
+ * 	hebras        -h   Número de hebras.
+ * 	numeroSumado  -l   Valor sumado en cada entrada (longitud de la
+ * 	                   sección crítica).
+ * 	numVeces      -n   Entradas en la sección crítica por hebra.
+ * 	rondas        -r   Veces que se repite cada cerrojo.
+ * 	limite        -t   Segundos tras los que se da por bloqueada
+ * 	                   una ejecución.
+ * 	contadores    -e   Si es true, cuenta las vueltas, yields,
+ * 	                   suspensiones... de las esperas y escribe el
+ * 	                   resumen de cada ejecución.
+ * 	equidad       -j   Si es true, mide lo justo que es el cerrojo
+ * 	                   con las hebras (ver medidas.Equidad).
+ * 	jfr           -f   Si es true, emite eventos de Flight Recorder
+ * 	                   en cada espera, entrada y salida (ver
+ * 	                   medidas.CerrojoJFR).
+ *
+ * Con -Dcerrojos.diario=fichero cada incremento se guarda además en
+ * un diario en disco (ver persistencia.CargaDuradera), y la suma
+ * sigue desde lo que ya hubiera en él.
+ *
+ * Ejemplo:
+ *
+ * 	java cerrojos.Motor -p p07.DekkerFinal,p10.b.TestAndSet -r 5
+ */
+public class Motor {
+
+	/**
+	 * Ejecuta una vez el cerrojo con la carga dada. Crea las hebras,
+	 * las arranca a la vez, y espera a que terminen.
+	 *
+	 * @param cerrojo Cerrojo a usar, sin usar previamente.
+	 * @param carga Carga de trabajo creada por el cerrojo.
+	 * @param numHebras Número de hebras.
+	 * @param numVeces Entradas en la sección crítica de cada hebra.
+	 * @param limiteNanos Tiempo máximo de espera.
+	 * @return Nanosegundos transcurridos, o -1 si alguna hebra no
+	 * termina en el tiempo límite (se queda bloqueada, como daemon).
+	 * @throws InterruptedException
+	 */
+	public static long ejecuta(Cerrojo cerrojo, Carga carga, int numHebras,
+	                           long numVeces, long limiteNanos)
+	                                                throws InterruptedException {
+
+		return ejecuta(cerrojo, carga, numHebras, numVeces, limiteNanos, null);
+
+	} // ejecuta
+
+	/**
+	 * Como ejecuta(), pero anotando además cada adquisición en los
+	 * contadores dados, que deben haberse pasado ya al cerrojo con
+	 * setContadores().
+	 *
+	 * @param contadores Contadores de espera, o null.
+	 */
+	public static long ejecuta(final Cerrojo cerrojo, final Carga carga,
+	                           int numHebras, final long numVeces,
+	                           long limiteNanos, final Contadores contadores)
+	                                                throws InterruptedException {
+
+		final CountDownLatch preparadas = new CountDownLatch(numHebras);
+		final CountDownLatch salida = new CountDownLatch(1);
+		Thread[] hebras = new Thread[numHebras];
+
+		for (int h = 0; h < numHebras; ++h) {
+			final int numHebra = h;
+			hebras[h] = new Thread("Hebra" + h) {
+				public void run() {
+					preparadas.countDown();
+					try {
+						salida.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (long i = 1; i <= numVeces; ++i) {
+						cerrojo.entradaSeccionCritica(numHebra);
+							carga.seccionCritica();
+						cerrojo.salidaSeccionCritica(numHebra);
+						carga.confirma();
+						if (contadores != null)
+							contadores.cuenta(numHebra, Contadores.ADQUISICIONES);
+					}
+				}
+			};
+			hebras[h].setDaemon(true);
+		}
+		cerrojo.registraHebras(hebras);
+		for (Thread t : hebras)
+			t.start();
+
+		preparadas.await();
+		long inicio = System.nanoTime();
+		salida.countDown();
+		for (Thread t : hebras) {
+			long restante = limiteNanos - (System.nanoTime() - inicio);
+			if (restante > 0)
+				TimeUnit.NANOSECONDS.timedJoin(t, restante);
+			if (t.isAlive())
+				return -1;
+		}
+		return System.nanoTime() - inicio;
+
+	} // ejecuta
+
+	//-----------------------------------------------------
+
+	/**
+	 * Configuración de una ejecución del motor.
+	 */
+	public static class Configuracion {
+
+		public String[] cerrojos = { "p07.DekkerFinal" };
+		public int hebras = 2;
+		public int numeroSumado = 10000;
+		public long numVeces = 10000;
+		public int rondas = 1;
+		public int limite = 60;
+		public boolean contadores = false;
+		public boolean equidad = false;
+		public boolean jfr = false;
+
+		/**
+		 * Lee la configuración de la línea de órdenes, cargando antes
+		 * el fichero de propiedades si se indica con -c.
+		 *
+		 * @param args Parámetros de la aplicación.
+		 * @throws IOException si no se puede leer el fichero.
+		 */
+		public Configuracion(String[] args) throws IOException {
+
+			Properties p = new Properties();
+			for (int i = 0; i < args.length - 1; ++i)
+				if (args[i].equals("-c"))
+					try (InputStream in = new FileInputStream(args[i + 1])) {
+						p.load(in);
+					}
+
+			for (int i = 0; i < args.length - 1; i += 2) {
+				String clave = CLAVES.getProperty(args[i]);
+				if (clave == null)
+					throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+				p.setProperty(clave, args[i + 1]);
+			}
+			if (args.length % 2 != 0)
+				throw new IllegalArgumentException("Falta el valor de " + args[args.length - 1]);
+
+			if (p.containsKey("cerrojos"))
+				cerrojos = p.getProperty("cerrojos").trim().split("\\s*,\\s*");
+			hebras = Integer.parseInt(p.getProperty("hebras", "" + hebras).trim());
+			numeroSumado = Integer.parseInt(p.getProperty("numeroSumado", "" + numeroSumado).trim());
+			numVeces = Long.parseLong(p.getProperty("numVeces", "" + numVeces).trim());
+			rondas = Integer.parseInt(p.getProperty("rondas", "" + rondas).trim());
+			limite = Integer.parseInt(p.getProperty("limite", "" + limite).trim());
+			contadores = Boolean.parseBoolean(p.getProperty("contadores", "" + contadores).trim());
+			equidad = Boolean.parseBoolean(p.getProperty("equidad", "" + equidad).trim());
+			jfr = Boolean.parseBoolean(p.getProperty("jfr", "" + jfr).trim());
+
+		} // constructor
+
+		/**
+		 * Opción de la línea de órdenes -> propiedad del fichero.
+		 */
+		private static final Properties CLAVES = new Properties();
+		static {
+			CLAVES.put("-c", "fichero");
+			CLAVES.put("-p", "cerrojos");
+			CLAVES.put("-h", "hebras");
+			CLAVES.put("-l", "numeroSumado");
+			CLAVES.put("-n", "numVeces");
+			CLAVES.put("-r", "rondas");
+			CLAVES.put("-t", "limite");
+			CLAVES.put("-e", "contadores");
+			CLAVES.put("-j", "equidad");
+			CLAVES.put("-f", "jfr");
+		}
+
+	} // class Configuracion
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Programa principal. Ejecuta cada cerrojo pedido en cada ronda,
+	 * comprobando que el resultado final es el esperado, y termina
+	 * con la productividad media de cada uno (sin contar la primera
+	 * ronda, que hace de calentamiento, si hay más de una).
+	 *
+	 * @param args Ver el comentario de la clase.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+
+		Configuracion conf = new Configuracion(args);
+		for (String nombre : conf.cerrojos) {
+			int max = Cerrojos.maxHebras(nombre, conf.hebras);
+			if (conf.hebras > max)
+				throw new IllegalArgumentException(nombre + " admite como mucho "
+				                                   + max + " hebras");
+		}
+
+		long resultadoEsperado = (long) conf.numeroSumado * conf.numVeces * conf.hebras;
+		double[] total = new double[conf.cerrojos.length];
+		int[] medidas = new int[conf.cerrojos.length];
+
+		for (int r = 0; r < conf.rondas; ++r) {
+			for (int c = 0; c < conf.cerrojos.length; ++c) {
+				Cerrojo cerrojo = Cerrojos.crea(conf.cerrojos[c], conf.hebras);
+				Carga carga = cerrojo.creaCarga(conf.numeroSumado);
+				if (conf.jfr)
+					cerrojo = new CerrojoJFR(cerrojo, conf.cerrojos[c], conf.hebras);
+				Contadores contadores = null;
+				if (conf.contadores) {
+					contadores = new Contadores(conf.hebras);
+					cerrojo.setContadores(contadores);
+				}
+				Equidad equidad = null;
+				if (conf.equidad)
+					cerrojo = equidad = new Equidad(cerrojo, conf.hebras, conf.numVeces);
+				long nanos = ejecuta(cerrojo, carga, conf.hebras, conf.numVeces,
+				                     TimeUnit.SECONDS.toNanos(conf.limite), contadores);
+				if (nanos < 0) {
+					System.out.printf("[%d] %-28s ¡¡¡BLOQUEADO!!!%n", r, conf.cerrojos[c]);
+					continue;
+				}
+				double opsPorSegundo = conf.numVeces * conf.hebras * 1e9 / nanos;
+				System.out.printf("[%d] %-28s %10.3f ms %14.1f ops/s  suma %d%s%n",
+				                  r, conf.cerrojos[c], nanos / 1e6, opsPorSegundo,
+				                  carga.getSuma(),
+				                  carga.getSuma() - carga.getSumaInicial() == resultadoEsperado
+				                  ? "" : "  ¡¡¡NO COINCIDEN!!!");
+				if (contadores != null)
+					contadores.imprimeResumen(System.out, conf.cerrojos[c]);
+				if (equidad != null)
+					equidad.imprimeResumen(System.out, conf.cerrojos[c]);
+				if (r > 0 || conf.rondas == 1) {
+					total[c] += opsPorSegundo;
+					medidas[c]++;
+				}
+			}
+		}
+
+		System.out.println("Esperábamos " + resultadoEsperado);
+		for (int c = 0; c < conf.cerrojos.length; ++c)
+			if (medidas[c] > 0)
+				System.out.printf("%-28s media %14.1f ops/s%n", conf.cerrojos[c],
+				                  total[c] / medidas[c]);
+
+		// Las hebras de una ejecución bloqueada son daemon.
+		System.exit(0);
+
+	} // main
+
+} // Motor
@@ -0,0 +1,221 @@
+package cerrojos;
+
+import java.util.Locale;
+
+import medidas.Contadores;
+
+/**
+ * Algoritmo de la panadería (Lamport) para N hebras, en la versión
+ * "blanca y negra" de Taubenfeld, que mantiene acotados los números.
+ *
+ * En la panadería clásica cada hebra que quiere entrar coge un número
+ * mayor que todos los que hay, y entra la del número menor (FIFO).
+ * Mientras siempre haya alguna hebra esperando los números no dejan
+ * de crecer, y con millones de entradas por segundo un int desborda
+ * en minutos.
+ *
+ * Aquí cada número tiene además un color, y hay un color global. Una
+ * hebra coge el color global y un número mayor que los de su mismo
+ * color. Al salir, cambia el color global al contrario del suyo, así
+ * que las que llegan después forman otra "tanda" que espera a que
+ * termine la tanda anterior, y empiezan a numerar desde 1. Los
+ * números nunca pasan de N.
+ *
+ * Como en DekkerFinal, todo el estado compartido son atributos
+ * volátiles (uno por hebra), sin instrucciones atómicas. Cada
+ * entrada recorre a todas las hebras dos veces (al coger número y al
+ * esperar), así que su coste crece con N aunque no haya nadie más.
+ * main() mide sólo ese recorrido: una única hebra entra y sale de
+ * cerrojos dimensionados para 1, 2, 4... 64 hebras. El efecto de la
+ * contención se ve con el barrido:
+ *
+ * 	java cerrojos.Panaderia [vueltas]
+ * 	java medidas.Barrido -p panaderia,filtro
+ */
+public class Panaderia implements Cerrojo {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numHebras Número de hebras (numeradas desde 0) que
+	 * usarán el cerrojo.
+	 */
+	public Panaderia(int numHebras) {
+
+		_numHebras = numHebras;
+		_eligiendo = new Flag[numHebras];
+		_numero = new Entero[numHebras];
+		_color = new Flag[numHebras];
+		for (int i = 0; i < numHebras; ++i) {
+			_eligiendo[i] = new Flag();
+			_numero[i] = new Entero();
+			_color[i] = new Flag();
+		}
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de hebra (de 0 a numHebras - 1) que
+	 * quiere entrar en la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		// Cogemos color y número.
+		_eligiendo[numHebra].valor = true;
+		boolean miColor = _colorGlobal;
+		_color[numHebra].valor = miColor;
+		int max = 0;
+		for (int j = 0; j < _numHebras; ++j)
+			if (_color[j].valor == miColor)
+				max = Math.max(max, _numero[j].valor);
+		int miNumero = max + 1;
+		_numero[numHebra].valor = miNumero;
+		_eligiendo[numHebra].valor = false;
+
+		// Esperamos nuestro turno.
+		int vueltas = 0;
+		for (int j = 0; j < _numHebras; ++j) {
+			if (j == numHebra)
+				continue;
+			while (_eligiendo[j].valor)
+				++vueltas;
+			while (true) {
+				int suNumero = _numero[j].valor;
+				if (suNumero == 0)
+					break;
+				boolean suColor = _color[j].valor;
+				if (suColor == miColor) {
+					// Misma tanda: pasa antes el número menor (y, si
+					// empatan, la hebra menor).
+					if ((suNumero > miNumero) || ((suNumero == miNumero) && (j > numHebra)))
+						break;
+				}
+				else {
+					// Otra tanda: si el color global ya no es el nuestro,
+					// la nuestra es la anterior y vamos primero.
+					if (_colorGlobal != miColor)
+						break;
+				}
+				++vueltas;
+			}
+		}
+		if ((_contadores != null) && (vueltas > 0)) {
+			_contadores.cuenta(numHebra, Contadores.ESPERAS_TURNO);
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+		}
+
+		// ¡Está libre!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica. Cambia el color global al contrario del de la hebra,
+	 * cerrando su tanda.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		_colorGlobal = !_color[numHebra].valor;
+		_numero[numHebra].valor = 0;
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() {
+
+		return _numHebras;
+
+	} // maxHebras
+
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Mide el coste de entrar y salir sin contención según el número
+	 * de hebras para el que se dimensiona el cerrojo.
+	 *
+	 * @param args Número de entradas por medida (opcional).
+	 */
+	public static void main(String[] args) {
+
+		int vueltas = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+		System.out.println("hebras\tns/entrada");
+		for (int n = 1; n <= 64; n *= 2) {
+			Panaderia cerrojo = new Panaderia(n);
+			long nanos = 0;
+			// La primera pasada es de calentamiento.
+			for (int pasada = 0; pasada < 2; ++pasada) {
+				long inicio = System.nanoTime();
+				for (int i = 0; i < vueltas; ++i) {
+					cerrojo.entradaSeccionCritica(0);
+					cerrojo.salidaSeccionCritica(0);
+				}
+				nanos = System.nanoTime() - inicio;
+			}
+			System.out.println(String.format(Locale.ROOT, "%d\t%.1f",
+			                                 n, (double) nanos / vueltas));
+		}
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Clase ("estructura") con un único booleano. Lo importante
+	 * del booleano es que es volátil.
+	 */
+	static class Flag {
+		public volatile boolean valor = false;
+	} // class Flag
+
+	/**
+	 * Clase ("estructura") con un único entero. Lo importante del
+	 * entero es que es volátil.
+	 */
+	static class Entero {
+		public volatile int valor = 0;
+	} // class Entero
+
+	protected final int _numHebras;
+
+	/**
+	 * Hebras que están cogiendo número.
+	 */
+	protected final Flag[] _eligiendo;
+
+	/**
+	 * Número de cada hebra. 0 si no quiere entrar. Nunca pasa de
+	 * _numHebras.
+	 */
+	protected final Entero[] _numero;
+
+	/**
+	 * Color del número de cada hebra.
+	 */
+	protected final Flag[] _color;
+
+	/**
+	 * Color de los números que se reparten ahora.
+	 */
+	protected volatile boolean _colorGlobal = false;
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
+
+} // Panaderia
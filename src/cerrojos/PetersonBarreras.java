@@ -0,0 +1,103 @@
+package cerrojos;
+
+/**
+ * Algoritmo de Peterson (p08.Peterson) con el orden de memoria justo,
+ * elegido con Barreras.
+ *
+ * Los flags y el turno están en un int[] separados por relleno, y se
+ * leen y escriben con VarHandle en el modo que diga la variante. El
+ * turno se escribe con cedeTurno() (getAndSet salvo en volatil y
+ * sinbarrera), y la única barrera completa está después de anunciar
+ * el flag y el turno, antes de mirar los de la otra hebra.
+ *
+ * 	java cerrojos.Barreras
+ * 	java medidas.Banco -p p08.Peterson,peterson.adqlib,peterson.opaco -h 2
+ */
+public class PetersonBarreras implements Cerrojo {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param barreras Orden de memoria de los accesos.
+	 */
+	public PetersonBarreras(Barreras barreras) {
+
+		_barreras = barreras;
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de hebra (0 o 1) que quiere entrar
+	 * en la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		Barreras b = _barreras;
+		int otraHebra = numHebra ^ 0x1;
+
+		b.anuncia(_estado, flag(numHebra), 1);
+		b.cedeTurno(_estado, TURNO, otraHebra);
+		b.barrera(); // StoreLoad: lo anterior se ve antes de leer lo siguiente.
+		while ((b.lee(_estado, flag(otraHebra)) != 0) &&
+		       (b.lee(_estado, TURNO) == otraHebra))
+			; // Espera activa
+		b.trasEsperar();
+
+		// ¡Está libre!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica.
+	 *
+	 * @param numHebra Número de hebra (0 o 1) que abandona la sección
+	 * crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		_barreras.suelta(_estado, flag(numHebra), 0);
+
+	} // salidaSeccionCritica
+
+	public Barreras getBarreras() {
+
+		return _barreras;
+
+	} // getBarreras
+
+	//-----------------------------------------------------
+	//                    Métodos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Posición en _estado del flag de una hebra.
+	 */
+	private static int flag(int numHebra) {
+
+		return (numHebra + 1) * Barreras.SEPARACION;
+
+	} // flag
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Posición en _estado del turno.
+	 */
+	protected static final int TURNO = 3 * Barreras.SEPARACION;
+
+	/**
+	 * Flags de las dos hebras (1 si quiere entrar) y turno, separados
+	 * por relleno.
+	 */
+	protected final int[] _estado = new int[4 * Barreras.SEPARACION];
+
+	protected final Barreras _barreras;
+
+} // PetersonBarreras
@@ -0,0 +1,303 @@
+package cerrojos;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import medidas.Contadores;
+
+/**
+ * Cerrojo "test and set" con retroceso exponencial aleatorio, para
+ * cualquier número de hebras.
+ *
+ * Con mucha contención, en p09.b y p10.b todas las hebras que
+ * esperan repiten el compareAndSet() en cuanto falla, y cuando el
+ * cerrojo se suelta se lanzan todas a la vez a por él. Aquí, como en
+ * TestAndTestAndSet, se espera leyendo, pero además cada vez que el
+ * compareAndSet() falla (otra hebra se ha adelantado, luego hay
+ * contención) la hebra deja de intentarlo un tiempo aleatorio entre
+ * 0 y un límite. El límite empieza en el retroceso mínimo y se
+ * duplica con cada fallo hasta el máximo, así que cuantas más hebras
+ * compiten más se reparten sus reintentos en el tiempo.
+ *
+ * Los retrocesos adecuados dependen de la máquina: el mínimo debería
+ * parecerse a lo que tarda el cerrojo en pasar de un núcleo a otro.
+ * calibrado() lo mide (dos hebras pasándose el cerrojo) y pone los
+ * límites a partir de ahí.
+ *
+ * 	java cerrojos.Motor -p ttas,retroceso,retroceso.calibrado -h 16
+ * 	java cerrojos.TestAndSetRetroceso
+ */
+public class TestAndSetRetroceso implements Cerrojo {
+
+	/**
+	 * Retroceso mínimo por defecto, en nanosegundos.
+	 */
+	public static final long MINIMO_POR_DEFECTO = 100;
+
+	/**
+	 * Retroceso máximo por defecto, en nanosegundos.
+	 */
+	public static final long MAXIMO_POR_DEFECTO = 20000;
+
+	/**
+	 * Constructor con los retrocesos por defecto.
+	 */
+	public TestAndSetRetroceso() {
+
+		this(MINIMO_POR_DEFECTO, MAXIMO_POR_DEFECTO);
+
+	} // constructor
+
+	/**
+	 * Constructor.
+	 *
+	 * @param minimoNanos Límite del primer retroceso, en nanosegundos.
+	 * @param maximoNanos Límite máximo de los retrocesos, en
+	 * nanosegundos.
+	 * @throws IllegalArgumentException si minimoNanos no es positivo
+	 * o es mayor que maximoNanos.
+	 */
+	public TestAndSetRetroceso(long minimoNanos, long maximoNanos) {
+
+		if ((minimoNanos <= 0) || (minimoNanos > maximoNanos))
+			throw new IllegalArgumentException("Retrocesos no válidos: mínimo " + minimoNanos
+			                                   + ", máximo " + maximoNanos);
+		_minimo = minimoNanos;
+		_maximo = maximoNanos;
+
+	} // constructor
+
+	/**
+	 * Crea un cerrojo con los retrocesos calibrados para esta máquina
+	 * (ver calibra()).
+	 *
+	 * @return Cerrojo nuevo.
+	 */
+	public static TestAndSetRetroceso calibrado() {
+
+		long traspaso = calibra();
+		return new TestAndSetRetroceso(traspaso, traspaso * FACTOR_MAXIMO);
+
+	} // calibrado
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de hebra; sólo se usa para los
+	 * contadores.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		long limite = _minimo;
+		int vueltas = 0, fallidos = 0;
+		while (true) {
+			while (_cerrojo.get() != 0)
+				++vueltas;
+			if (_cerrojo.compareAndSet(0, 1))
+				break;
+			// Nos han ganado: retrocedemos.
+			++fallidos;
+			long espera = ThreadLocalRandom.current().nextLong(limite) + 1;
+			long fin = System.nanoTime() + espera;
+			while (System.nanoTime() - fin < 0)
+				;
+			limite = Math.min(_maximo, limite * 2);
+		}
+		if ((_contadores != null) && (vueltas + fallidos > 0)) {
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas + fallidos);
+			_contadores.suma(numHebra, Contadores.CAS_FALLIDOS, fallidos);
+		}
+
+		// ¡Está libre!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		_cerrojo.set(0);
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() {
+
+		return Integer.MAX_VALUE;
+
+	} // maxHebras
+
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	public long getMinimo() {
+
+		return _minimo;
+
+	} // getMinimo
+
+	public long getMaximo() {
+
+		return _maximo;
+
+	} // getMaximo
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Mide cuánto tarda el cerrojo en pasar de una hebra a otra: dos
+	 * hebras se lo van pasando por turnos, y se toma la mediana de
+	 * varias tandas. Sólo se mide la primera vez; las siguientes
+	 * devuelven el mismo valor.
+	 *
+	 * @return Nanosegundos de un traspaso (al menos 1).
+	 */
+	public static synchronized long calibra() {
+
+		if (_traspaso > 0)
+			return _traspaso;
+
+		long[] tandas = new long[TANDAS_CALIBRADO];
+		for (int t = 0; t < tandas.length; ++t)
+			tandas[t] = mideTraspaso();
+		Arrays.sort(tandas);
+		_traspaso = Math.max(1, tandas[tandas.length / 2]);
+		return _traspaso;
+
+	} // calibra
+
+	/**
+	 * Dos hebras se pasan el cerrojo TRASPASOS_POR_TANDA veces, o
+	 * hasta que se acaba el tiempo de la tanda: cada una entra y, si
+	 * le toca (según turno), le da el turno a la otra.
+	 *
+	 * @return Nanosegundos medios por traspaso.
+	 */
+	private static long mideTraspaso() {
+
+		final AtomicInteger cerrojo = new AtomicInteger(0);
+		final int[] turno = new int[1];
+		final CountDownLatch listas = new CountDownLatch(2);
+		final long limite = System.nanoTime() + NANOS_POR_TANDA;
+		Thread otra = new Thread("Calibrado") {
+			public void run() {
+				listas.countDown();
+				try {
+					listas.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				pasaTurnos(cerrojo, turno, 1, limite);
+			}
+		};
+		otra.setDaemon(true);
+		otra.start();
+		listas.countDown();
+		try {
+			listas.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		long inicio = System.nanoTime();
+		int traspasos = pasaTurnos(cerrojo, turno, 0, limite);
+		long nanos = System.nanoTime() - inicio;
+		try {
+			otra.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return nanos / Math.max(1, 2L * traspasos);
+
+	} // mideTraspaso
+
+	/**
+	 * Bucle de una de las hebras de mideTraspaso(). El turno se lee
+	 * y escribe dentro de la sección crítica, así que no necesita ser
+	 * volátil: lo protege el propio cerrojo.
+	 *
+	 * @return Veces que esta hebra ha pasado el turno a la otra.
+	 */
+	private static int pasaTurnos(AtomicInteger cerrojo, int[] turno,
+	                              int numHebra, long limite) {
+
+		int hechos = 0;
+		while ((hechos < TRASPASOS_POR_TANDA) && (System.nanoTime() - limite < 0)) {
+			while ((cerrojo.get() != 0) || !cerrojo.compareAndSet(0, 1))
+				;
+			if (turno[0] == numHebra) {
+				turno[0] = numHebra ^ 0x1;
+				++hechos;
+			}
+			cerrojo.set(0);
+		}
+		return hechos;
+
+	} // pasaTurnos
+
+	/**
+	 * Muestra los retrocesos calibrados para esta máquina.
+	 *
+	 * @param args Se ignoran.
+	 */
+	public static void main(String[] args) {
+
+		TestAndSetRetroceso cerrojo = calibrado();
+		System.out.println("Traspaso del cerrojo: " + calibra() + " ns");
+		System.out.println("Retroceso mínimo: " + cerrojo.getMinimo() + " ns");
+		System.out.println("Retroceso máximo: " + cerrojo.getMaximo() + " ns");
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Cerrojo de la sección crítica. Un 0 indica que no se está usando.
+	 */
+	protected final AtomicInteger _cerrojo = new AtomicInteger(0);
+
+	/**
+	 * Límites de los retrocesos, en nanosegundos.
+	 */
+	protected final long _minimo, _maximo;
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Veces el traspaso medido que se usan como retroceso máximo al
+	 * calibrar.
+	 */
+	private static final int FACTOR_MAXIMO = 64;
+
+	private static final int TANDAS_CALIBRADO = 5;
+
+	private static final int TRASPASOS_POR_TANDA = 20000;
+
+	private static final long NANOS_POR_TANDA = 200000000L;
+
+	/**
+	 * Resultado de calibra(), o 0 si aún no se ha medido.
+	 */
+	private static long _traspaso = 0;
+
+} // TestAndSetRetroceso
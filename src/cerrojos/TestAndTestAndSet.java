@@ -0,0 +1,167 @@
+package cerrojos;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import medidas.Contadores;
+
+/**
+ * Cerrojo "test and test and set" (TTAS) para cualquier número de
+ * hebras.
+ *
+ * p09.b.TestAndSet y p10.b.TestAndSet esperan repitiendo
+ * compareAndSet(0, 1). Cada intento, aunque falle, pide la línea de
+ * caché del cerrojo en exclusiva, y con varias hebras esperando la
+ * línea va de un núcleo a otro sin parar, retrasando también a la
+ * que está dentro cuando quiere salir.
+ *
+ * Aquí se espera leyendo: mientras el cerrojo esté cogido, cada hebra
+ * lee su copia local de la línea, que no genera tráfico. Sólo cuando
+ * lo ve libre intenta el compareAndSet(), y si otra se le adelanta
+ * vuelve a leer.
+ *
+ * Con leerAntes a false se comporta como p10.b (todo son
+ * compareAndSet()), pero contando igual, para compararlos. Los
+ * compareAndSet() fallidos (Contadores.CAS_FALLIDOS) son una medida
+ * aproximada del tráfico de coherencia que provoca cada uno; main()
+ * los compara para 8 hebras o más:
+ *
+ * 	java cerrojos.TestAndTestAndSet [opsPorHebra] [hebras,hebras...]
+ * 	java cerrojos.Motor -p p10.b.TestAndSet,tas,ttas -h 8 -e true
+ */
+public class TestAndTestAndSet implements Cerrojo {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param leerAntes Si es true, se espera leyendo y sólo se
+	 * intenta el compareAndSet() con el cerrojo libre (TTAS). Si es
+	 * false, se espera con compareAndSet() (TAS).
+	 */
+	public TestAndTestAndSet(boolean leerAntes) {
+
+		_leerAntes = leerAntes;
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de hebra; sólo se usa para los
+	 * contadores.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		int vueltas = 0, fallidos = 0;
+		while (true) {
+			if (_leerAntes)
+				while (_cerrojo.get() != 0)
+					++vueltas; // Espera activa sobre la caché local
+			if (_cerrojo.compareAndSet(0, 1))
+				break;
+			++fallidos;
+		}
+		if ((_contadores != null) && (vueltas + fallidos > 0)) {
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas + fallidos);
+			_contadores.suma(numHebra, Contadores.CAS_FALLIDOS, fallidos);
+		}
+
+		// ¡Está libre!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		_cerrojo.set(0);
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() {
+
+		return Integer.MAX_VALUE;
+
+	} // maxHebras
+
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Compara TAS y TTAS con 8, 16 y 32 hebras (o las indicadas):
+	 * productividad y compareAndSet() fallidos por adquisición.
+	 *
+	 * @param args Operaciones por hebra y lista de números de hebras
+	 * (opcionales).
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws InterruptedException {
+
+		long opsPorHebra = (args.length > 0) ? Long.parseLong(args[0]) : 200000;
+		int[] hebras = { 8, 16, 32 };
+		if (args.length > 1) {
+			String[] partes = args[1].split(",");
+			hebras = new int[partes.length];
+			for (int i = 0; i < partes.length; ++i)
+				hebras[i] = Integer.parseInt(partes[i].trim());
+		}
+
+		System.out.println("cerrojo\thebras\tops/s\tcasFallidos/adq\tvueltas/adq");
+		for (int n : hebras) {
+			for (String nombre : new String[] { "tas", "ttas" }) {
+				Cerrojo cerrojo = Cerrojos.crea(nombre, n);
+				Carga carga = cerrojo.creaCarga(100);
+				Contadores contadores = new Contadores(n);
+				cerrojo.setContadores(contadores);
+				long nanos = Motor.ejecuta(cerrojo, carga, n, opsPorHebra,
+				                           TimeUnit.SECONDS.toNanos(60), contadores);
+				if (nanos < 0) {
+					System.out.println(nombre + "\t" + n + "\tbloqueado");
+					continue;
+				}
+				double adquisiciones = contadores.getTotal(Contadores.ADQUISICIONES);
+				System.out.println(String.format(Locale.ROOT, "%s\t%d\t%.1f\t%.3f\t%.3f",
+				        nombre, n, adquisiciones * 1e9 / nanos,
+				        contadores.getTotal(Contadores.CAS_FALLIDOS) / adquisiciones,
+				        contadores.getTotal(Contadores.VUELTAS) / adquisiciones));
+				if (carga.getSuma() != opsPorHebra * n * 100)
+					System.out.println("¡¡¡NO COINCIDEN!!!");
+			}
+		}
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Cerrojo de la sección crítica. Un 0 indica que no se está usando.
+	 */
+	protected final AtomicInteger _cerrojo = new AtomicInteger(0);
+
+	/**
+	 * Si se espera leyendo antes de intentar el compareAndSet().
+	 */
+	protected final boolean _leerAntes;
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
+
+} // TestAndTestAndSet
@@ -0,0 +1,185 @@
+package cerrojos;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import medidas.Contadores;
+
+/**
+ * Cerrojo de tickets (como la cola de la carnicería) para cualquier
+ * número de hebras.
+ *
+ * Con los TestAndSet entra la hebra que antes ve el cerrojo libre, sin
+ * ningún orden, así que con mucha carga alguna puede quedarse mucho
+ * tiempo sin entrar. Aquí cada hebra saca un número con
+ * getAndIncrement() sobre el "siguiente" y espera a que el "atendido"
+ * llegue a él. Al salir se incrementa el atendido, y entra la
+ * siguiente en orden de llegada (FIFO).
+ *
+ * Los dos contadores están en líneas de caché distintas (con
+ * relleno en un AtomicLongArray, como en medidas.Contadores), para
+ * que sacar número no invalide la línea sobre la que esperan las
+ * demás.
+ *
+ * Mientras espera, cada hebra lee el atendido y, antes de volver a
+ * leerlo, espera un tiempo proporcional a cuántas tiene delante:
+ * las del final de la cola apenas leen.
+ *
+ * Tiene también entradaSeccionCritica() y salidaSeccionCritica() sin
+ * parámetros, así que sustituye directamente al protocolo de
+ * p10.b.TestAndSet. Para comparar productividad y latencias:
+ *
+ * 	java medidas.Banco -p p10.b.TestAndSet,ticket -h 2,4,8,16
+ * 	java cerrojos.Motor -p p10.b.TestAndSet,ticket -h 8 -j true
+ */
+public class Ticket implements Cerrojo {
+
+	/**
+	 * Espera por cada hebra por delante en la cola, por defecto, en
+	 * nanosegundos.
+	 */
+	public static final long ESPERA_POR_HEBRA_POR_DEFECTO = 50;
+
+	/**
+	 * Constructor con la espera por defecto.
+	 */
+	public Ticket() {
+
+		this(ESPERA_POR_HEBRA_POR_DEFECTO);
+
+	} // constructor
+
+	/**
+	 * Constructor.
+	 *
+	 * @param esperaPorHebra Nanosegundos que se espera entre dos
+	 * lecturas del atendido por cada hebra por delante. Con 0 se
+	 * lee continuamente.
+	 */
+	public Ticket(long esperaPorHebra) {
+
+		_esperaPorHebra = esperaPorHebra;
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica, como el de
+	 * p10.b.TestAndSet.
+	 */
+	public void entradaSeccionCritica() {
+
+		entradaSeccionCritica(-1);
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para salir de la sección crítica, como el de
+	 * p10.b.TestAndSet.
+	 */
+	public void salidaSeccionCritica() {
+
+		salidaSeccionCritica(-1);
+
+	} // salidaSeccionCritica
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de hebra; sólo se usa para los
+	 * contadores (con -1 no se cuenta).
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		long miTicket = _tickets.getAndIncrement(SIGUIENTE);
+		long vueltas = 0;
+		long atendido;
+		while ((atendido = _tickets.get(ATENDIDO)) != miTicket) {
+			++vueltas;
+			if (_esperaPorHebra > 0) {
+				long fin = System.nanoTime() + (miTicket - atendido) * _esperaPorHebra;
+				while (System.nanoTime() - fin < 0)
+					;
+			}
+		}
+		if ((_contadores != null) && (numHebra >= 0) && (vueltas > 0)) {
+			_contadores.cuenta(numHebra, Contadores.ESPERAS_TURNO);
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+		}
+
+		// ¡Nos toca!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica. Sólo la hebra que está dentro escribe el atendido, así
+	 * que no hace falta una operación atómica para incrementarlo.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		_tickets.set(ATENDIDO, _tickets.get(ATENDIDO) + 1);
+
+	} // salidaSeccionCritica
+
+	/**
+	 * Indica si hay alguna hebra esperando detrás de la que está
+	 * dentro. Sólo tiene sentido llamarlo desde la sección crítica.
+	 *
+	 * @return true si alguna hebra ha sacado número después de la
+	 * que está dentro.
+	 */
+	public boolean hayEsperando() {
+
+		return _tickets.get(SIGUIENTE) - _tickets.get(ATENDIDO) > 1;
+
+	} // hayEsperando
+
+	public int maxHebras() {
+
+		return Integer.MAX_VALUE;
+
+	} // maxHebras
+
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Distancia (en longs) entre los dos contadores: 128 bytes, dos
+	 * líneas de caché. Como en medidas.Contadores, la primera
+	 * posición queda sin usar para separarlos de la cabecera.
+	 */
+	protected static final int SEPARACION = 16;
+
+	/**
+	 * Posición del siguiente número a repartir.
+	 */
+	protected static final int SIGUIENTE = SEPARACION;
+
+	/**
+	 * Posición del número al que le toca entrar.
+	 */
+	protected static final int ATENDIDO = 2 * SEPARACION;
+
+	/**
+	 * Siguiente y atendido, separados por relleno.
+	 */
+	protected final AtomicLongArray _tickets = new AtomicLongArray(3 * SEPARACION);
+
+	protected final long _esperaPorHebra;
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
+
+} // Ticket
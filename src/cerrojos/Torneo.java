@@ -0,0 +1,151 @@
+package cerrojos;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Cerrojo "torneo" para N hebras construido con cerrojos de dos
+ * hebras (p07.DekkerFinal o p08.Peterson).
+ *
+ * Los cerrojos de dos hebras forman un árbol binario completo, como
+ * las eliminatorias de un torneo. Cada hebra empieza en una hoja y va
+ * subiendo: en cada nodo juega como hebra 0 o 1 según venga del hijo
+ * izquierdo o del derecho, y cuando lo gana sube al padre. La que
+ * gana la raíz entra en la sección crítica. Al salir suelta los
+ * nodos desde la raíz hacia abajo.
+ *
+ * En cada nodo sólo compiten las dos hebras que han ganado sus
+ * subárboles, así que se cumple la condición de los algoritmos de dos
+ * hebras. Cada entrada atraviesa log2(N) nodos, frente al recorrido
+ * de todas las hebras de Panaderia o de todas por nivel de Filtro.
+ *
+ * main() mide la entrada y salida sin contención de estos cerrojos y
+ * de los de N hebras "planos" para 4 a 64 hebras. Con contención:
+ *
+ * 	java cerrojos.Torneo [vueltas]
+ * 	java medidas.Barrido -p filtro,panaderia,torneo.dekker,torneo.peterson -h 4,8,16,32,64
+ *
+ * Los nodos cuentan sus esperas con el número de hebra del nodo (0 o
+ * 1), no el global, así que este cerrojo no admite Contadores.
+ */
+public class Torneo implements Cerrojo {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numHebras Número de hebras (numeradas desde 0) que
+	 * usarán el cerrojo.
+	 * @param fabrica Crea cada uno de los cerrojos de dos hebras del
+	 * árbol.
+	 */
+	public Torneo(int numHebras, Supplier<Cerrojo> fabrica) {
+
+		_numHebras = numHebras;
+		int hojas = 2;
+		while (hojas < numHebras)
+			hojas *= 2;
+		_hojas = hojas;
+		// Montículo: la raíz es el 1 y los hijos de i son 2i y 2i + 1.
+		_nodos = new Cerrojo[hojas];
+		for (int i = 1; i < hojas; ++i)
+			_nodos[i] = fabrica.get();
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica. Gana los
+	 * nodos desde la hoja de la hebra hasta la raíz.
+	 *
+	 * @param numHebra Número de hebra (de 0 a numHebras - 1) que
+	 * quiere entrar en la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		for (int i = _hojas + numHebra; i > 1; i /= 2)
+			_nodos[i / 2].entradaSeccionCritica(i & 1);
+
+		// ¡Está libre!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que la hebra abandona la sección
+	 * crítica. Suelta los nodos en orden inverso, desde la raíz.
+	 *
+	 * @param numHebra Número de hebra que abandona la sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		int nodo = _hojas + numHebra;
+		for (int nivel = Integer.numberOfTrailingZeros(_hojas) - 1; nivel >= 0; --nivel) {
+			int i = nodo >> nivel;
+			_nodos[i / 2].salidaSeccionCritica(i & 1);
+		}
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() {
+
+		return _numHebras;
+
+	} // maxHebras
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Mide el coste de entrar y salir sin contención de cada cerrojo
+	 * de N hebras según el número de hebras para el que se
+	 * dimensiona.
+	 *
+	 * @param args Número de entradas por medida (opcional).
+	 */
+	public static void main(String[] args) {
+
+		int vueltas = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+		String[] cerrojos = { "filtro", "panaderia", "torneo.dekker", "torneo.peterson" };
+		System.out.print("hebras");
+		for (String nombre : cerrojos)
+			System.out.print("\t" + nombre);
+		System.out.println("\t(ns/entrada)");
+		for (int n = 4; n <= 64; n *= 2) {
+			System.out.print(n);
+			for (String nombre : cerrojos) {
+				Cerrojo cerrojo = Cerrojos.crea(nombre, n);
+				long nanos = 0;
+				// La primera pasada es de calentamiento.
+				for (int pasada = 0; pasada < 2; ++pasada) {
+					long inicio = System.nanoTime();
+					for (int i = 0; i < vueltas; ++i) {
+						cerrojo.entradaSeccionCritica(n - 1);
+						cerrojo.salidaSeccionCritica(n - 1);
+					}
+					nanos = System.nanoTime() - inicio;
+				}
+				System.out.print(String.format(Locale.ROOT, "\t%.1f", (double) nanos / vueltas));
+			}
+			System.out.println();
+		}
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	protected final int _numHebras;
+
+	/**
+	 * Número de hojas: la potencia de dos que llega a _numHebras.
+	 */
+	protected final int _hojas;
+
+	/**
+	 * Cerrojos de dos hebras del árbol, de 1 a _hojas - 1.
+	 */
+	protected final Cerrojo[] _nodos;
+
+} // Torneo
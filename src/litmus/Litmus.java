@@ -0,0 +1,410 @@
+package litmus;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Motor de pruebas "litmus" (al estilo de jcstress) para los
+ * experimentos de reordenación de p02.Clase y p02.Clase02.
+ *
+ * En p02 cada ejecución del programa es una única carrera entre
+ * cambia() y calcula(), así que ver un resultado raro cuesta mucho.
+ * Aquí se preparan lotes de muchos estados independientes en un
+ * array, y las dos hebras (actores) los recorren a la vez: una
+ * ejecuta cambia() y la otra calcula() sobre cada estado. Una barrera
+ * suelta a los dos actores a la vez al empezar cada lote. Los
+ * resultados de calcula() se cuentan en un histograma, y cada valor
+ * se clasifica como aceptable, interesante o prohibido.
+ *
+ * Pruebas:
+ *
+ * 	clase    i = 3; i = 4;   contra   r = i; r += 2 * i;
+ * 	clase02  x = 3; y = 4;   contra   r = y; r += x;
+ *
+ * Cada una en cuatro variantes de acceso a los atributos: plano,
+ * volátil, opaco y adquisición/liberación (escritura con setRelease,
+ * lectura con getAcquire), hechas con VarHandle.
+ *
+ * Uso:
+ *
+ * 	java litmus.Litmus [-p clase,clase02] [-a plano,volatil,opaco,adqlib]
+ * 	                   [-t segundos] [-l tamañoLote]
+ */
+public class Litmus {
+
+	/**
+	 * Clasificación de un resultado.
+	 */
+	public enum Clase {
+		ACEPTABLE, INTERESANTE, PROHIBIDO
+	} // enum Clase
+
+	//-----------------------------------------------------
+
+	/**
+	 * Estado compartido de una prueba: los atributos de p02.Clase
+	 * (i) y p02.Clase02 (x e y). Cada prueba usa uno nuevo.
+	 */
+	static final class Estado {
+		int i, x, y;
+	} // class Estado
+
+	static final VarHandle I, X, Y;
+	static {
+		try {
+			MethodHandles.Lookup l = MethodHandles.lookup();
+			I = l.findVarHandle(Estado.class, "i", int.class);
+			X = l.findVarHandle(Estado.class, "x", int.class);
+			Y = l.findVarHandle(Estado.class, "y", int.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	//-----------------------------------------------------
+
+	/**
+	 * Modo de acceso a los atributos.
+	 */
+	public enum Acceso {
+
+		PLANO("plano") {
+			void escribe(VarHandle v, Estado e, int valor) { v.set(e, valor); }
+			int lee(VarHandle v, Estado e) { return (int) v.get(e); }
+		},
+		VOLATIL("volatil") {
+			void escribe(VarHandle v, Estado e, int valor) { v.setVolatile(e, valor); }
+			int lee(VarHandle v, Estado e) { return (int) v.getVolatile(e); }
+		},
+		OPACO("opaco") {
+			void escribe(VarHandle v, Estado e, int valor) { v.setOpaque(e, valor); }
+			int lee(VarHandle v, Estado e) { return (int) v.getOpaque(e); }
+		},
+		ADQUISICION_LIBERACION("adqlib") {
+			void escribe(VarHandle v, Estado e, int valor) { v.setRelease(e, valor); }
+			int lee(VarHandle v, Estado e) { return (int) v.getAcquire(e); }
+		};
+
+		Acceso(String nombre) { this.nombre = nombre; }
+
+		abstract void escribe(VarHandle v, Estado e, int valor);
+
+		abstract int lee(VarHandle v, Estado e);
+
+		public final String nombre;
+
+	} // enum Acceso
+
+	//-----------------------------------------------------
+
+	/**
+	 * Una prueba: qué hace cada actor y cómo se clasifican los
+	 * resultados. Los resultados posibles son enteros pequeños
+	 * (menores que MAX_RESULTADO).
+	 */
+	public static abstract class Prueba {
+
+		Prueba(String nombre, Acceso acceso) {
+			this.nombre = nombre;
+			this.acceso = acceso;
+		}
+
+		/** cambia() */
+		abstract void actor1(Estado e);
+
+		/** calcula() */
+		abstract int actor2(Estado e);
+
+		abstract Clase clasifica(int resultado);
+
+		abstract String describe(int resultado);
+
+		public final String nombre;
+
+		public final Acceso acceso;
+
+	} // class Prueba
+
+	/**
+	 * p02.Clase: i = 3; i = 4; contra r = i; r += 2 * i.
+	 *
+	 * Si la primera lectura ve a y la segunda b, r = a + 2b. Es
+	 * aceptable ver 0 o 4 en ambas, e interesante ver el valor
+	 * intermedio 3 (la carrera de la práctica). Que la segunda lectura
+	 * vea un valor más antiguo que la primera (3 = 3+0, 4 = 4+0,
+	 * 10 = 4+2·3) rompe la coherencia de la variable: está prohibido
+	 * salvo con accesos planos, en los que el modelo de memoria lo
+	 * permite.
+	 */
+	static class PruebaClase extends Prueba {
+
+		PruebaClase(Acceso acceso) { super("clase", acceso); }
+
+		void actor1(Estado e) {
+			acceso.escribe(I, e, 3);
+			acceso.escribe(I, e, 4);
+		}
+
+		int actor2(Estado e) {
+			int r = acceso.lee(I, e);
+			r += 2 * acceso.lee(I, e);
+			return r;
+		}
+
+		Clase clasifica(int r) {
+			switch (r) {
+			case 0: case 8: case 12:
+				return Clase.ACEPTABLE;
+			case 6: case 9: case 11:
+				return Clase.INTERESANTE;
+			case 3: case 4: case 10:
+				return acceso == Acceso.PLANO ? Clase.INTERESANTE : Clase.PROHIBIDO;
+			default:
+				return Clase.PROHIBIDO;
+			}
+		}
+
+		String describe(int r) {
+			for (int a : new int[] { 0, 3, 4 })
+				for (int b : new int[] { 0, 3, 4 })
+					if (a + 2 * b == r)
+						return "i leído " + a + " y luego " + b;
+			return "imposible";
+		}
+
+	} // class PruebaClase
+
+	/**
+	 * p02.Clase02: x = 3; y = 4; contra r = y; r += x.
+	 *
+	 * 0, 3 y 7 son aceptables. 4 significa que se vio la escritura de
+	 * y pero no la anterior de x: está prohibido con accesos volátiles
+	 * y con adquisición/liberación, y es interesante con planos y
+	 * opacos, que no ordenan accesos a variables distintas.
+	 */
+	static class PruebaClase02 extends Prueba {
+
+		PruebaClase02(Acceso acceso) { super("clase02", acceso); }
+
+		void actor1(Estado e) {
+			acceso.escribe(X, e, 3);
+			acceso.escribe(Y, e, 4);
+		}
+
+		int actor2(Estado e) {
+			int r = acceso.lee(Y, e);
+			r += acceso.lee(X, e);
+			return r;
+		}
+
+		Clase clasifica(int r) {
+			switch (r) {
+			case 0: case 3: case 7:
+				return Clase.ACEPTABLE;
+			case 4:
+				return (acceso == Acceso.PLANO || acceso == Acceso.OPACO)
+				       ? Clase.INTERESANTE : Clase.PROHIBIDO;
+			default:
+				return Clase.PROHIBIDO;
+			}
+		}
+
+		String describe(int r) {
+			switch (r) {
+			case 0: return "no se ve ninguna escritura";
+			case 3: return "se ve x pero no y";
+			case 4: return "se ve y pero no x (reordenación)";
+			case 7: return "se ven las dos";
+			default: return "imposible";
+			}
+		}
+
+	} // class PruebaClase02
+
+	/**
+	 * Crea una prueba por nombre.
+	 *
+	 * @param nombre "clase" o "clase02".
+	 * @param acceso Modo de acceso.
+	 * @return Prueba.
+	 */
+	public static Prueba creaPrueba(String nombre, Acceso acceso) {
+
+		switch (nombre) {
+		case "clase": return new PruebaClase(acceso);
+		case "clase02": return new PruebaClase02(acceso);
+		default: throw new IllegalArgumentException("Prueba desconocida: " + nombre);
+		}
+
+	} // creaPrueba
+
+	//-----------------------------------------------------
+	//                    Ejecución
+	//-----------------------------------------------------
+
+	/**
+	 * Resultados posibles: de 0 a MAX_RESULTADO - 1.
+	 */
+	public static final int MAX_RESULTADO = 16;
+
+	/**
+	 * Barrera de dos hebras que espera activamente un rato y luego
+	 * cede el procesador. Mucho más barata que CyclicBarrier cuando
+	 * los dos actores llegan casi a la vez.
+	 */
+	static final class Barrera {
+
+		void espera() {
+			int generacion = _generacion;
+			if (_llegadas.incrementAndGet() == 2) {
+				_llegadas.set(0);
+				_generacion = generacion + 1;
+				return;
+			}
+			int vueltas = 0;
+			while (_generacion == generacion)
+				if (++vueltas < 1000)
+					Thread.onSpinWait();
+				else
+					Thread.yield();
+		}
+
+		private final AtomicInteger _llegadas = new AtomicInteger(0);
+
+		private volatile int _generacion = 0;
+
+	} // class Barrera
+
+	/**
+	 * Ejecuta una prueba durante el tiempo dado.
+	 *
+	 * @param prueba Prueba a ejecutar.
+	 * @param tamLote Estados por lote.
+	 * @param milisegundos Duración.
+	 * @return Histograma: número de veces que se obtuvo cada resultado.
+	 * @throws InterruptedException
+	 */
+	public static long[] ejecuta(final Prueba prueba, int tamLote, long milisegundos)
+	                                                    throws InterruptedException {
+
+		final Estado[] lote = new Estado[tamLote];
+		for (int k = 0; k < tamLote; ++k)
+			lote[k] = new Estado();
+		final long[] resultados = new long[MAX_RESULTADO];
+		final Barrera inicio = new Barrera(), fin = new Barrera();
+		final long limite = System.nanoTime() + milisegundos * 1000000L;
+		final boolean[] terminar = { false };
+
+		Thread actor1 = new Thread("Hebra1") {
+			public void run() {
+				while (true) {
+					// Sólo este actor decide parar. La barrera hace que
+					// el otro vea la decisión.
+					terminar[0] = System.nanoTime() > limite;
+					inicio.espera();
+					if (terminar[0])
+						return;
+					for (Estado e : lote)
+						prueba.actor1(e);
+					fin.espera();
+					for (Estado e : lote) {
+						e.i = 0;
+						e.x = 0;
+						e.y = 0;
+					}
+				}
+			}
+		};
+		Thread actor2 = new Thread("Hebra2") {
+			public void run() {
+				while (true) {
+					inicio.espera();
+					if (terminar[0])
+						return;
+					for (Estado e : lote)
+						resultados[prueba.actor2(e)]++;
+					fin.espera();
+				}
+			}
+		};
+
+		actor1.start();
+		actor2.start();
+		actor1.join();
+		actor2.join();
+		return resultados;
+
+	} // ejecuta
+
+	/**
+	 * Escribe el histograma de una prueba.
+	 *
+	 * @return true si se observó algún resultado prohibido.
+	 */
+	static boolean imprime(Prueba prueba, long[] resultados, long milisegundos) {
+
+		long total = 0;
+		for (long r : resultados)
+			total += r;
+		System.out.printf("%s [%s]: %d pruebas (%.1f millones/s)%n", prueba.nombre,
+		                  prueba.acceso.nombre, total, total / (milisegundos * 1000.0));
+		boolean prohibido = false;
+		for (int r = 0; r < MAX_RESULTADO; ++r) {
+			if (resultados[r] == 0 && prueba.clasifica(r) == Clase.PROHIBIDO)
+				continue;
+			Clase c = prueba.clasifica(r);
+			prohibido |= (c == Clase.PROHIBIDO) && (resultados[r] > 0);
+			System.out.printf("  %4d %14d  %-11s %s%n", r, resultados[r], c,
+			                  prueba.describe(r));
+		}
+		if (prohibido)
+			System.out.println("  ¡¡¡RESULTADO PROHIBIDO OBSERVADO!!!");
+		return prohibido;
+
+	} // imprime
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Programa principal. Ejecuta cada prueba en cada modo de acceso
+	 * pedido y escribe su histograma.
+	 *
+	 * @param args Ver el comentario de la clase.
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws InterruptedException {
+
+		String[] pruebas = { "clase", "clase02" };
+		String[] accesos = { "plano", "volatil", "opaco", "adqlib" };
+		long milisegundos = 1000;
+		int tamLote = 8192;
+
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-p": pruebas = args[++i].split(","); break;
+			case "-a": accesos = args[++i].split(","); break;
+			case "-t": milisegundos = (long) (Double.parseDouble(args[++i]) * 1000); break;
+			case "-l": tamLote = Integer.parseInt(args[++i]); break;
+			default:
+				throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+			}
+		}
+
+		for (String p : pruebas)
+			for (String a : accesos) {
+				Acceso acceso = null;
+				for (Acceso candidato : Acceso.values())
+					if (candidato.nombre.equals(a))
+						acceso = candidato;
+				if (acceso == null)
+					throw new IllegalArgumentException("Acceso desconocido: " + a);
+				Prueba prueba = creaPrueba(p, acceso);
+				imprime(prueba, ejecuta(prueba, tamLote, milisegundos), milisegundos);
+			}
+
+	} // main
+
+} // Litmus
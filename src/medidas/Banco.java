@@ -0,0 +1,459 @@
+package medidas;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import cerrojos.Carga;
+import cerrojos.Cerrojo;
+import cerrojos.Cerrojos;
+
+/**
+ * Banco de pruebas (benchmark) de todos los protocolos de entrada
+ * y salida de la sección crítica registrados en cerrojos.Cerrojos
+ * (entre ellos, los de las prácticas p03 a p12).
+ *
+ * Para cada protocolo, número de hebras y longitud de la sección
+ * crítica (el NUMERO_SUMADO de las prácticas) se hacen varias
+ * iteraciones de calentamiento y varias de medida. En cada iteración
+ * cada hebra entra y sale de la sección crítica un número fijo de
+ * veces (como el NUM_VECES de las prácticas), de modo que los
+ * protocolos que obligan a alternar (Dekker1) terminan igual que
+ * en sus main().
+ *
+ * Se informa de:
+ * 	- Productividad: operaciones (entrada + suma + salida) por segundo.
+ * 	- Latencia de entradaSeccionCritica: media y percentiles.
+ * 	- Tiempo de CPU por operación (con espera activa crece con la
+ * 	  espera; sin ella, no).
+ * 	- Memoria reservada por operación (presión sobre el recolector).
+ * 	- Si el resultado final de _suma es el esperado.
+ *
+ * Igual que JMH, cada configuración se ejecuta por defecto en una
+ * JVM nueva. Así el JIT de un protocolo no contamina el de otro y,
+ * sobre todo, podemos matar las configuraciones que se quedan
+ * bloqueadas (Dekker3 puede interbloquearse, y con una sola CPU las
+ * esperas activas pueden no terminar a tiempo). Con -b 0 se ejecuta
+ * todo en la misma JVM.
+ *
+ * Uso:
+ *
+ * 	java medidas.Banco [-p p07.DekkerFinal,p08.Peterson|todos]
+ * 	                   [-h 1,2,4] [-l 1,100,10000] [-n opsPorHebra]
+ * 	                   [-w calentamiento] [-i iteraciones]
+ * 	                   [-t segundosLimite] [-b 0|1] [-d directorio]
+ *
+ * Las latencias se registran en un Histograma por hebra, que se
+ * juntan al terminar. Con -d se guarda además el histograma de cada
+ * configuración en el directorio dado, para juntarlo o consultarlo
+ * después con "java medidas.Histograma ficheros...".
+ *
+ * Con -Dcerrojos.diario=fichero la carga es persistente (ver
+ * persistencia.CargaDuradera). Las latencias siguen siendo las de
+ * coger el cerrojo; la espera a que cada incremento esté en disco
+ * sólo se ve en ops/s.
+ */
+public class Banco {
+
+	//-----------------------------------------------------
+	//                    Medida
+	//-----------------------------------------------------
+
+	/**
+	 * Resultado de una iteración.
+	 */
+	static class Iteracion {
+		long nanos;
+		long operaciones;
+		long bytesReservados;
+		long nanosCpu;
+		Histograma latencias;
+		long suma;
+		boolean correcta;
+	} // class Iteracion
+
+	/**
+	 * Ejecuta una iteración: crea un protocolo nuevo, lanza las
+	 * hebras, y espera a que terminen.
+	 *
+	 * @return Resultado, o null si las hebras no terminan a tiempo.
+	 */
+	static Iteracion ejecutaIteracion(String nombre, final int numHebras,
+	                                  int longitud, final long opsPorHebra,
+	                                  long limiteNanos)
+	                                                throws InterruptedException {
+
+		final Cerrojo protocolo = Cerrojos.crea(nombre, numHebras);
+		final Carga carga = protocolo.creaCarga(longitud);
+		final Histograma[] latencias = new Histograma[numHebras];
+		final long[] bytes = new long[numHebras];
+		final long[] cpu = new long[numHebras];
+		final CountDownLatch salida = new CountDownLatch(1);
+		final CountDownLatch preparadas = new CountDownLatch(numHebras);
+		Thread[] hebras = new Thread[numHebras];
+
+		for (int h = 0; h < numHebras; ++h) {
+			final int numHebra = h;
+			latencias[h] = new Histograma();
+			hebras[h] = new Thread("Hebra" + h) {
+				public void run() {
+					Histograma misLatencias = latencias[numHebra];
+					long bytesAntes = bytesReservados();
+					long cpuAntes = nanosCpu();
+					preparadas.countDown();
+					try {
+						salida.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (long i = 0; i < opsPorHebra; ++i) {
+						long t0 = System.nanoTime();
+						protocolo.entradaSeccionCritica(numHebra);
+						long t1 = System.nanoTime();
+							carga.seccionCritica();
+						protocolo.salidaSeccionCritica(numHebra);
+						carga.confirma();
+						misLatencias.registra(t1 - t0);
+					}
+					bytes[numHebra] = bytesReservados() - bytesAntes;
+					cpu[numHebra] = nanosCpu() - cpuAntes;
+				}
+			};
+			hebras[h].setDaemon(true);
+		}
+		protocolo.registraHebras(hebras);
+		for (Thread t : hebras)
+			t.start();
+
+		preparadas.await();
+		long inicio = System.nanoTime();
+		salida.countDown();
+		for (Thread t : hebras) {
+			long restante = limiteNanos - (System.nanoTime() - inicio);
+			if (restante > 0)
+				TimeUnit.NANOSECONDS.timedJoin(t, restante);
+			if (t.isAlive())
+				return null;
+		}
+		long fin = System.nanoTime();
+
+		Iteracion it = new Iteracion();
+		it.nanos = fin - inicio;
+		it.operaciones = opsPorHebra * numHebras;
+		for (long b : bytes)
+			it.bytesReservados += b;
+		for (long c : cpu)
+			it.nanosCpu += c;
+		it.latencias = latencias[0];
+		for (int h = 1; h < numHebras; ++h)
+			it.latencias.agrega(latencias[h]);
+		it.suma = carga.getSuma() - carga.getSumaInicial();
+		it.correcta = it.suma == it.operaciones * longitud;
+		return it;
+
+	} // ejecutaIteracion
+
+	/**
+	 * Bytes reservados en el heap por la hebra actual, o 0 si la
+	 * JVM no lo permite medir.
+	 */
+	static long bytesReservados() {
+
+		java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if (mx instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) mx)
+			             .getThreadAllocatedBytes(Thread.currentThread().getId());
+		return 0;
+
+	} // bytesReservados
+
+	/**
+	 * Tiempo de CPU consumido por la hebra actual, en nanosegundos,
+	 * o 0 si la JVM no lo permite medir. Con espera activa es todo el
+	 * tiempo de espera; aparcando, sólo lo que se da vueltas.
+	 */
+	static long nanosCpu() {
+
+		java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if (mx.isCurrentThreadCpuTimeSupported())
+			return mx.getCurrentThreadCpuTime();
+		return 0;
+
+	} // nanosCpu
+
+	/**
+	 * Ejecuta una configuración completa en la JVM actual y escribe
+	 * su fila de resultados.
+	 */
+	static void ejecutaConfiguracion(Opciones op, String nombre, int numHebras,
+	                                 int longitud) throws InterruptedException {
+
+		long limite = TimeUnit.SECONDS.toNanos(op.segundosLimite);
+		for (int i = 0; i < op.calentamiento; ++i) {
+			if (ejecutaIteracion(nombre, numHebras, longitud, op.opsPorHebra, limite) == null) {
+				imprimeFila(nombre, numHebras, longitud, null, "BLOQUEADO");
+				return;
+			}
+		}
+
+		List<Iteracion> medidas = new ArrayList<Iteracion>();
+		boolean correcta = true;
+		for (int i = 0; i < op.iteraciones; ++i) {
+			Iteracion it = ejecutaIteracion(nombre, numHebras, longitud, op.opsPorHebra, limite);
+			if (it == null) {
+				imprimeFila(nombre, numHebras, longitud, null, "BLOQUEADO");
+				return;
+			}
+			correcta &= it.correcta;
+			medidas.add(it);
+		}
+		Histograma latencias = imprimeFila(nombre, numHebras, longitud, medidas,
+		                                   correcta ? "ok" : "¡CARRERA!");
+		if (op.directorio != null)
+			try {
+				latencias.escribe(new File(op.directorio, nombre + "-" + numHebras + "-"
+				                           + longitud + ".hist").getPath());
+			} catch (IOException e) {
+				System.err.println("No se pudo guardar el histograma: " + e);
+			}
+
+	} // ejecutaConfiguracion
+
+	/**
+	 * Ejecuta la configuración en una JVM hija, con la misma
+	 * classpath, matándola si excede el tiempo límite.
+	 */
+	static void ejecutaEnHija(Opciones op, String nombre, int numHebras,
+	                          int longitud) throws IOException, InterruptedException {
+
+		List<String> args = op.comoArgumentos(nombre, numHebras, longitud);
+		args.add("-b");
+		args.add("0");
+		args.add("--sin-cabecera");
+		long limite = (long) op.segundosLimite * (op.calentamiento + op.iteraciones + 1);
+		int estado = lanzaHija(Banco.class, args, limite, System.out::println);
+		if (estado < 0)
+			imprimeFila(nombre, numHebras, longitud, null, "BLOQUEADO");
+		else if (estado != 0)
+			imprimeFila(nombre, numHebras, longitud, null, "ERROR (salida " + estado + ")");
+
+	} // ejecutaEnHija
+
+	/**
+	 * Ejecuta el main() de una clase en una JVM hija con la misma
+	 * classpath y las mismas propiedades "cerrojos.*", pasando cada
+	 * línea que escriba al consumidor dado. Si no termina en el
+	 * tiempo límite, la mata. Quien la llama tiene que mirar el
+	 * estado de salida: una hija que se cae (una excepción, falta de
+	 * memoria) termina a tiempo, pero sin escribir todas sus líneas.
+	 *
+	 * @param principal Clase con el main().
+	 * @param args Parámetros del main().
+	 * @param limiteSegundos Tiempo máximo.
+	 * @param lineas Recibe cada línea de la salida de la hija.
+	 * @return Estado de salida de la hija (0 si fue bien), o -1 si
+	 * no terminó a tiempo y se mató.
+	 */
+	static int lanzaHija(Class<?> principal, List<String> args, long limiteSegundos,
+	                         final Consumer<String> lineas)
+	                                       throws IOException, InterruptedException {
+
+		String java = System.getProperty("java.home") + File.separator + "bin"
+		              + File.separator + "java";
+		List<String> comando = new ArrayList<String>();
+		comando.add(java);
+		comando.add("-cp");
+		comando.add(System.getProperty("java.class.path"));
+		// Las propiedades de configuración de los cerrojos.
+		for (String clave : System.getProperties().stringPropertyNames())
+			if (clave.startsWith("cerrojos."))
+				comando.add("-D" + clave + "=" + System.getProperty(clave));
+		comando.add(principal.getName());
+		comando.addAll(args);
+
+		Process hija = new ProcessBuilder(comando).redirectErrorStream(true).start();
+		final BufferedReader lector = new BufferedReader(
+		                                  new InputStreamReader(hija.getInputStream()));
+		Thread eco = new Thread(() -> {
+			try {
+				String linea;
+				while ((linea = lector.readLine()) != null)
+					lineas.accept(linea);
+			} catch (IOException e) {
+			}
+		});
+		eco.start();
+		boolean terminada = hija.waitFor(limiteSegundos, TimeUnit.SECONDS);
+		if (!terminada)
+			hija.destroyForcibly();
+		eco.join();
+		return terminada ? hija.exitValue() : -1;
+
+	} // lanzaHija
+
+	//-----------------------------------------------------
+	//                    Salida
+	//-----------------------------------------------------
+
+	static void imprimeCabecera() {
+
+		System.out.printf("%-28s %6s %8s %14s %12s %9s %9s %9s %9s %11s %11s %12s  %s%n",
+		                  "Protocolo", "Hebras", "Longitud", "ops/s", "± desv",
+		                  "media ns", "p50 ns", "p99 ns", "p99.9 ns", "máx ns",
+		                  "CPU ns/op", "B/op", "Estado");
+
+	} // imprimeCabecera
+
+	/**
+	 * Escribe la fila de resultados de una configuración.
+	 *
+	 * @return Latencias de todas las iteraciones juntas, o null si
+	 * no hay medidas.
+	 */
+	static Histograma imprimeFila(String nombre, int numHebras, int longitud,
+	                              List<Iteracion> medidas, String estado) {
+
+		if (medidas == null) {
+			System.out.printf("%-28s %6d %8d %14s %12s %9s %9s %9s %9s %11s %11s %12s  %s%n",
+			                  nombre, numHebras, longitud, "-", "-", "-", "-", "-",
+			                  "-", "-", "-", "-", estado);
+			return null;
+		}
+
+		double[] productividad = new double[medidas.size()];
+		Histograma latencias = new Histograma();
+		long bytes = 0, cpu = 0, ops = 0;
+		for (int i = 0; i < medidas.size(); ++i) {
+			Iteracion it = medidas.get(i);
+			productividad[i] = it.operaciones * 1e9 / it.nanos;
+			bytes += it.bytesReservados;
+			cpu += it.nanosCpu;
+			ops += it.operaciones;
+			latencias.agrega(it.latencias);
+		}
+
+		double media = 0, desv = 0;
+		for (double p : productividad)
+			media += p;
+		media /= productividad.length;
+		for (double p : productividad)
+			desv += (p - media) * (p - media);
+		desv = productividad.length > 1 ? Math.sqrt(desv / (productividad.length - 1)) : 0;
+
+		System.out.printf("%-28s %6d %8d %14.1f %12.1f %9.1f %9d %9d %9d %11d %11.1f %12.3f  %s%n",
+		                  nombre, numHebras, longitud, media, desv,
+		                  latencias.getMedia(),
+		                  latencias.percentil(0.50), latencias.percentil(0.99),
+		                  latencias.percentil(0.999), latencias.getMax(),
+		                  (double) cpu / ops, (double) bytes / ops, estado);
+		return latencias;
+
+	} // imprimeFila
+
+	//-----------------------------------------------------
+	//                    Opciones
+	//-----------------------------------------------------
+
+	/**
+	 * Opciones de la línea de órdenes.
+	 */
+	static class Opciones {
+		String[] protocolos = Cerrojos.nombres().toArray(new String[0]);
+		int[] hebras = { 2 };
+		int[] longitudes = { 1, 100, 10000 };
+		long opsPorHebra = 100000;
+		int calentamiento = 3;
+		int iteraciones = 5;
+		int segundosLimite = 30;
+		boolean bifurcar = true;
+		boolean cabecera = true;
+		String directorio = null;
+
+		Opciones(String[] args) {
+			for (int i = 0; i < args.length; ++i) {
+				switch (args[i]) {
+				case "-p":
+					protocolos = args[++i].equals("todos") ? Cerrojos.nombres().toArray(new String[0])
+					                                       : args[i].split(",");
+					break;
+				case "-h": hebras = enteros(args[++i]); break;
+				case "-l": longitudes = enteros(args[++i]); break;
+				case "-n": opsPorHebra = Long.parseLong(args[++i]); break;
+				case "-w": calentamiento = Integer.parseInt(args[++i]); break;
+				case "-i": iteraciones = Integer.parseInt(args[++i]); break;
+				case "-t": segundosLimite = Integer.parseInt(args[++i]); break;
+				case "-b": bifurcar = !args[++i].equals("0"); break;
+				case "-d": directorio = args[++i]; break;
+				case "--sin-cabecera": cabecera = false; break;
+				default:
+					throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+				}
+			}
+		}
+
+		List<String> comoArgumentos(String protocolo, int numHebras, int longitud) {
+			List<String> r = new ArrayList<String>(Arrays.asList(
+				"-p", protocolo, "-h", "" + numHebras, "-l", "" + longitud,
+				"-n", "" + opsPorHebra, "-w", "" + calentamiento,
+				"-i", "" + iteraciones, "-t", "" + segundosLimite));
+			if (directorio != null) {
+				r.add("-d");
+				r.add(directorio);
+			}
+			return r;
+		}
+
+		static int[] enteros(String lista) {
+			String[] partes = lista.split(",");
+			int[] r = new int[partes.length];
+			for (int i = 0; i < partes.length; ++i)
+				r[i] = Integer.parseInt(partes[i].trim());
+			return r;
+		}
+	} // class Opciones
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Programa principal. Recorre todas las combinaciones de
+	 * protocolo, número de hebras y longitud de la sección crítica
+	 * pedidas, saltándose las que superan el máximo de hebras del
+	 * protocolo.
+	 *
+	 * @param args Opciones (ver comentario de la clase).
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+
+		Opciones op = new Opciones(args);
+		if (op.cabecera)
+			imprimeCabecera();
+
+		for (String nombre : op.protocolos)
+			for (int numHebras : op.hebras) {
+				if (numHebras > Cerrojos.maxHebras(nombre, numHebras))
+					continue;
+				for (int longitud : op.longitudes) {
+					if (op.bifurcar)
+						ejecutaEnHija(op, nombre, numHebras, longitud);
+					else
+						ejecutaConfiguracion(op, nombre, numHebras, longitud);
+				}
+			}
+
+		// Puede haber hebras bloqueadas (daemon) si no bifurcamos.
+		System.exit(0);
+
+	} // main
+
+} // Banco
@@ -0,0 +1,225 @@
+package medidas;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import cerrojos.Cerrojos;
+
+/**
+ * Barrido de escalabilidad: ejecuta cada cerrojo con 1, 2, 4... hebras
+ * hasta el número de núcleos, y después con más hebras que núcleos
+ * (sobresuscripción), repitiendo cada configuración varias veces.
+ *
+ * Cada prueba es una fila de un fichero CSV con la productividad,
+ * los percentiles de la latencia de entrada y si la suma final
+ * coincide con el resultadoEsperado. Así se ve dónde deja de escalar
+ * cada algoritmo y cuál se hunde cuando hay más hebras que núcleos.
+ *
+ * Como en Banco, cada cerrojo y número de hebras se ejecuta en una
+ * JVM hija, y si se queda bloqueada se anota y se mata.
+ *
+ * Uso:
+ *
+ * 	java medidas.Barrido [-p cerrojo,cerrojo...|todos] [-o fichero.csv]
+ * 	                     [-m maxHebras] [-x 2,4] [-h 1,2,8...]
+ * 	                     [-l numeroSumado] [-n opsPorHebra]
+ * 	                     [-w calentamiento] [-i pruebas]
+ * 	                     [-t segundosLimite]
+ *
+ * -m es el número de núcleos (por defecto, los que ve la JVM) y -x
+ * los factores de sobresuscripción sobre él. Con -h se dan
+ * directamente los números de hebras, y -m y -x no se usan.
+ *
+ * Si una hija se cae sin quedarse bloqueada (una excepción, falta de
+ * memoria...), las pruebas que no llegó a escribir se anotan con
+ * estado "error" y se dice en la salida.
+ */
+public class Barrido {
+
+	/**
+	 * Cabecera del CSV.
+	 */
+	public static final String CABECERA =
+		"cerrojo,hebras,prueba,numeroSumado,opsPorHebra,nanos,opsPorSegundo,"
+		+ "mediaNs,p50Ns,p99Ns,p999Ns,maxNs,suma,resultadoEsperado,correcto,estado";
+
+	/**
+	 * Números de hebras del barrido: potencias de dos hasta maxHebras,
+	 * maxHebras, y maxHebras multiplicado por cada factor.
+	 *
+	 * @param maxHebras Número de núcleos.
+	 * @param factores Factores de sobresuscripción.
+	 * @return Números de hebras, ordenados y sin repetir.
+	 */
+	public static int[] numerosDeHebras(int maxHebras, int[] factores) {
+
+		TreeSet<Integer> r = new TreeSet<Integer>();
+		for (int n = 1; n < maxHebras; n *= 2)
+			r.add(n);
+		r.add(maxHebras);
+		for (int f : factores)
+			r.add(maxHebras * f);
+		int[] numeros = new int[r.size()];
+		int i = 0;
+		for (int n : r)
+			numeros[i++] = n;
+		return numeros;
+
+	} // numerosDeHebras
+
+	//-----------------------------------------------------
+
+	/**
+	 * Ejecuta todas las pruebas de una configuración en la JVM actual
+	 * y escribe sus filas CSV en la salida estándar.
+	 */
+	static void ejecutaPruebas(String nombre, int numHebras, int longitud,
+	                           long opsPorHebra, int calentamiento, int pruebas,
+	                           int segundosLimite) throws InterruptedException {
+
+		long limite = TimeUnit.SECONDS.toNanos(segundosLimite);
+		long esperado = opsPorHebra * numHebras * longitud;
+		for (int i = 0; i < calentamiento; ++i)
+			if (Banco.ejecutaIteracion(nombre, numHebras, longitud, opsPorHebra, limite) == null) {
+				System.out.println(filaBloqueada(nombre, numHebras, -1, longitud, opsPorHebra));
+				return;
+			}
+
+		for (int i = 0; i < pruebas; ++i) {
+			Banco.Iteracion it = Banco.ejecutaIteracion(nombre, numHebras, longitud,
+			                                            opsPorHebra, limite);
+			if (it == null) {
+				System.out.println(filaBloqueada(nombre, numHebras, i, longitud, opsPorHebra));
+				return;
+			}
+			Histograma h = it.latencias;
+			System.out.println(String.format(Locale.ROOT,
+				"%s,%d,%d,%d,%d,%d,%.1f,%.1f,%d,%d,%d,%d,%d,%d,%b,%s",
+				nombre, numHebras, i, longitud, opsPorHebra, it.nanos,
+				it.operaciones * 1e9 / it.nanos, h.getMedia(), h.percentil(0.5),
+				h.percentil(0.99), h.percentil(0.999), h.getMax(), it.suma,
+				esperado, it.correcta, "ok"));
+		}
+
+	} // ejecutaPruebas
+
+	static String filaBloqueada(String nombre, int numHebras, int prueba,
+	                            int longitud, long opsPorHebra) {
+
+		return String.format(Locale.ROOT, "%s,%d,%d,%d,%d,,,,,,,,,%d,false,bloqueado",
+		                     nombre, numHebras, prueba, longitud, opsPorHebra,
+		                     opsPorHebra * numHebras * longitud);
+
+	} // filaBloqueada
+
+	static String filaFallida(String nombre, int numHebras, int prueba,
+	                          int longitud, long opsPorHebra) {
+
+		return String.format(Locale.ROOT, "%s,%d,%d,%d,%d,,,,,,,,,%d,false,error",
+		                     nombre, numHebras, prueba, longitud, opsPorHebra,
+		                     opsPorHebra * numHebras * longitud);
+
+	} // filaFallida
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Programa principal.
+	 *
+	 * @param args Ver el comentario de la clase.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+
+		String[] cerrojos = Cerrojos.nombres().toArray(new String[0]);
+		String fichero = "barrido.csv";
+		int maxHebras = Runtime.getRuntime().availableProcessors();
+		int[] factores = { 2, 4 };
+		int[] hebras = null;
+		int longitud = 100;
+		long opsPorHebra = 100000;
+		int calentamiento = 1;
+		int pruebas = 5;
+		int segundosLimite = 30;
+		boolean hija = false;
+
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-p":
+				if (!args[++i].equals("todos"))
+					cerrojos = args[i].split(",");
+				break;
+			case "-o": fichero = args[++i]; break;
+			case "-m": maxHebras = Integer.parseInt(args[++i]); break;
+			case "-x": factores = Banco.Opciones.enteros(args[++i]); break;
+			case "-h": hebras = Banco.Opciones.enteros(args[++i]); break;
+			case "-l": longitud = Integer.parseInt(args[++i]); break;
+			case "-n": opsPorHebra = Long.parseLong(args[++i]); break;
+			case "-w": calentamiento = Integer.parseInt(args[++i]); break;
+			case "-i": pruebas = Integer.parseInt(args[++i]); break;
+			case "-t": segundosLimite = Integer.parseInt(args[++i]); break;
+			case "--hija": hija = true; break;
+			default:
+				throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+			}
+		}
+		if (hebras == null)
+			hebras = numerosDeHebras(maxHebras, factores);
+
+		if (hija) {
+			// Una sola configuración, ya elegida por el padre.
+			ejecutaPruebas(cerrojos[0], hebras[0], longitud, opsPorHebra,
+			               calentamiento, pruebas, segundosLimite);
+			System.exit(0);
+		}
+
+		try (final PrintWriter csv = new PrintWriter(new FileWriter(fichero))) {
+			csv.println(CABECERA);
+			for (String nombre : cerrojos) {
+				for (int n : hebras) {
+					if (n > Cerrojos.maxHebras(nombre, n))
+						continue;
+					List<String> argsHija = new ArrayList<String>();
+					for (String a : new String[] {
+					        "-p", nombre, "-h", "" + n, "-l", "" + longitud,
+					        "-n", "" + opsPorHebra, "-w", "" + calentamiento,
+					        "-i", "" + pruebas, "-t", "" + segundosLimite, "--hija" })
+						argsHija.add(a);
+					final int[] filas = { 0 };
+					int estado = Banco.lanzaHija(Barrido.class, argsHija,
+					        (long) segundosLimite * (calentamiento + pruebas + 1),
+					        linea -> {
+					        	if (linea.startsWith(nombre + ",")) {
+					        		csv.println(linea);
+					        		filas[0]++;
+					        	}
+					        	else
+					        		System.err.println(linea);
+					        });
+					String resultado = filas[0] + " pruebas";
+					if (estado < 0) {
+						csv.println(filaBloqueada(nombre, n, filas[0], longitud, opsPorHebra));
+						resultado = "bloqueado";
+					}
+					else if (estado != 0) {
+						csv.println(filaFallida(nombre, n, filas[0], longitud, opsPorHebra));
+						resultado = "ERROR (la hija salió con " + estado + " tras "
+						            + filas[0] + " pruebas)";
+					}
+					csv.flush();
+					System.out.println(nombre + " con " + n + " hebras: " + resultado);
+				}
+			}
+		}
+
+	} // main
+
+} // Barrido
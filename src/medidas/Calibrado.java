@@ -0,0 +1,139 @@
+package medidas;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Calibrado de la espera "primero activa, después aparcada".
+ *
+ * Aparcar una hebra con LockSupport.park() y despertarla con unpark()
+ * cuesta un cambio de contexto en cada sentido. Si lo que se espera
+ * va a llegar antes, es mejor esperar activamente. Lo habitual es
+ * dar vueltas durante más o menos lo que costaría aparcarse y
+ * despertar, y después aparcarse: así nunca se pierde más del doble
+ * de lo que se habría perdido eligiendo bien.
+ *
+ * vueltasAntesDeAparcar() mide las dos cosas en esta máquina (lo que
+ * tarda una vuelta de espera activa sobre un volátil, y lo que tarda
+ * un traspaso park()/unpark() entre dos hebras) y devuelve su
+ * cociente. Se mide una sola vez por JVM. La propiedad
+ * cerrojos.vueltasAntesDeAparcar permite fijarlo a mano.
+ */
+public class Calibrado {
+
+	/**
+	 * Vueltas de espera activa que cuestan lo mismo que aparcarse y
+	 * ser despertada.
+	 *
+	 * @return Número de vueltas, entre MIN_VUELTAS y MAX_VUELTAS.
+	 */
+	public static synchronized int vueltasAntesDeAparcar() {
+
+		if (_vueltas > 0)
+			return _vueltas;
+
+		Integer fijadas = Integer.getInteger("cerrojos.vueltasAntesDeAparcar");
+		if (fijadas != null) {
+			_vueltas = Math.max(1, fijadas);
+			return _vueltas;
+		}
+
+		// La primera medida de cada una es de calentamiento.
+		nanosPorVuelta();
+		double porVuelta = nanosPorVuelta();
+		nanosPorTraspaso();
+		double porTraspaso = nanosPorTraspaso();
+		long vueltas = Math.round(porTraspaso / Math.max(porVuelta, 0.01));
+		_vueltas = (int) Math.max(MIN_VUELTAS, Math.min(MAX_VUELTAS, vueltas));
+		return _vueltas;
+
+	} // vueltasAntesDeAparcar
+
+	/**
+	 * Nanosegundos de una vuelta de espera activa leyendo un
+	 * atributo volátil.
+	 */
+	static double nanosPorVuelta() {
+
+		final int vueltas = 1000000;
+		long inicio = System.nanoTime();
+		int i = 0;
+		while ((_bandera == 0) && (i < vueltas))
+			++i;
+		return (double) (System.nanoTime() - inicio) / vueltas;
+
+	} // nanosPorVuelta
+
+	/**
+	 * Nanosegundos de un traspaso entre dos hebras que se van
+	 * aparcando y despertando por turnos.
+	 */
+	static double nanosPorTraspaso() {
+
+		final int traspasos = 2000;
+		final Thread principal = Thread.currentThread();
+		final AtomicInteger turno = new AtomicInteger(0);
+		Thread otra = new Thread("Calibrado") {
+			public void run() {
+				for (int i = 0; i < traspasos; ++i) {
+					while (turno.get() != 1)
+						LockSupport.park();
+					turno.set(0);
+					LockSupport.unpark(principal);
+				}
+			}
+		};
+		otra.setDaemon(true);
+		otra.start();
+		long inicio = System.nanoTime();
+		for (int i = 0; i < traspasos; ++i) {
+			turno.set(1);
+			LockSupport.unpark(otra);
+			while (turno.get() != 0)
+				LockSupport.park();
+		}
+		long nanos = System.nanoTime() - inicio;
+		try {
+			otra.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return (double) nanos / (2 * traspasos);
+
+	} // nanosPorTraspaso
+
+	/**
+	 * Muestra el calibrado de esta máquina.
+	 *
+	 * @param args Se ignoran.
+	 */
+	public static void main(String[] args) {
+
+		nanosPorVuelta();
+		System.out.printf("Vuelta de espera activa: %.2f ns%n", nanosPorVuelta());
+		nanosPorTraspaso();
+		System.out.printf("Traspaso con park()/unpark(): %.0f ns%n", nanosPorTraspaso());
+		System.out.println("Vueltas antes de aparcar: " + vueltasAntesDeAparcar());
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	private static final int MIN_VUELTAS = 100;
+
+	private static final int MAX_VUELTAS = 1000000;
+
+	/**
+	 * Resultado de vueltasAntesDeAparcar(), o 0 si aún no se ha
+	 * calculado.
+	 */
+	private static int _vueltas = 0;
+
+	/**
+	 * Volátil sobre el que se da vueltas al medir. Nunca cambia.
+	 */
+	private static volatile int _bandera = 0;
+
+} // Calibrado
@@ -0,0 +1,215 @@
+package medidas;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import cerrojos.Carga;
+import cerrojos.Cerrojo;
+
+/**
+ * Cerrojo que envuelve a otro y emite eventos de JDK Flight Recorder
+ * al empezar a esperar, al entrar y al salir de la sección crítica.
+ *
+ * Los cerrojos de las prácticas esperan sobre atributos volátiles y
+ * no sobre monitores, así que JFR no los ve. Con estos eventos
+ * aparecen en JMC junto a los de recolección de basura, safepoints...
+ *
+ * 	- cerrojos.EsperaIniciada: instantáneo, la hebra llama a
+ * 	  entradaSeccionCritica().
+ * 	- cerrojos.Adquirido: su duración es la espera hasta entrar, e
+ * 	  incluye las vueltas de espera activa.
+ * 	- cerrojos.Liberado: su duración es el tiempo dentro de la
+ * 	  sección crítica.
+ *
+ * Se activan y desactivan como cualquier evento de JFR (fichero .jfc
+ * o -XX:StartFlightRecording). Si no hay ninguna grabación que los
+ * pida, sólo se paga la consulta de EventType.isEnabled().
+ *
+ * Las vueltas se obtienen de los Contadores del cerrojo envuelto, así
+ * que sólo salen en los que los soportan (Dekker y Peterson), y sólo
+ * si hay contadores: los que se pasen con setContadores() o, si no se
+ * pasa ninguno, unos propios que se ponen sólo si cerrojos.Adquirido
+ * está activo al crear el envoltorio (si no, contarían siempre para
+ * nada). Sin contadores, las vueltas salen a 0.
+ */
+public class CerrojoJFR implements Cerrojo {
+
+	@Name("cerrojos.EsperaIniciada")
+	@Label("Espera iniciada")
+	@Category("Cerrojos")
+	@Description("Una hebra empieza a esperar para entrar en la sección crítica")
+	@StackTrace(false)
+	public static class EsperaIniciada extends Event {
+		@Label("Hebra") int numHebra;
+		@Label("Algoritmo") String algoritmo;
+	} // class EsperaIniciada
+
+	@Name("cerrojos.Adquirido")
+	@Label("Sección crítica adquirida")
+	@Category("Cerrojos")
+	@Description("Espera hasta entrar en la sección crítica")
+	@StackTrace(false)
+	public static class Adquirido extends Event {
+		@Label("Hebra") int numHebra;
+		@Label("Algoritmo") String algoritmo;
+		@Label("Vueltas") long vueltas;
+	} // class Adquirido
+
+	@Name("cerrojos.Liberado")
+	@Label("Sección crítica liberada")
+	@Category("Cerrojos")
+	@Description("Tiempo dentro de la sección crítica")
+	@StackTrace(false)
+	public static class Liberado extends Event {
+		@Label("Hebra") int numHebra;
+		@Label("Algoritmo") String algoritmo;
+	} // class Liberado
+
+	//-----------------------------------------------------
+
+	/**
+	 * Constructor. Si cerrojos.Adquirido está activo, pone al cerrojo
+	 * envuelto unos contadores propios para poder informar de las
+	 * vueltas de cada espera.
+	 *
+	 * @param cerrojo Cerrojo a observar.
+	 * @param algoritmo Nombre que aparecerá en los eventos.
+	 * @param numHebras Número de hebras que lo usarán.
+	 */
+	public CerrojoJFR(Cerrojo cerrojo, String algoritmo, int numHebras) {
+
+		_cerrojo = cerrojo;
+		_algoritmo = algoritmo;
+		_numHebras = numHebras;
+		_liberados = new Liberado[(numHebras + 1) * SEPARACION];
+		setContadores(null);
+
+	} // constructor
+
+	//-----------------------------------------------------
+	// Cerrojo
+	//-----------------------------------------------------
+
+	public void entradaSeccionCritica(int numHebra) {
+
+		if (!ESPERA.isEnabled() && !ADQUIRIDO.isEnabled() && !LIBERADO.isEnabled()) {
+			_cerrojo.entradaSeccionCritica(numHebra);
+			return;
+		}
+
+		EsperaIniciada espera = new EsperaIniciada();
+		if (espera.shouldCommit()) {
+			espera.numHebra = numHebra;
+			espera.algoritmo = _algoritmo;
+			espera.commit();
+		}
+
+		long vueltas = vueltas(numHebra);
+		Adquirido adquirido = new Adquirido();
+		adquirido.begin();
+		_cerrojo.entradaSeccionCritica(numHebra);
+		adquirido.end();
+		if (adquirido.shouldCommit()) {
+			adquirido.numHebra = numHebra;
+			adquirido.algoritmo = _algoritmo;
+			adquirido.vueltas = vueltas(numHebra) - vueltas;
+			adquirido.commit();
+		}
+
+		if (LIBERADO.isEnabled()) {
+			Liberado liberado = new Liberado();
+			liberado.begin();
+			_liberados[(numHebra + 1) * SEPARACION] = liberado;
+		}
+
+	} // entradaSeccionCritica
+
+	public void salidaSeccionCritica(int numHebra) {
+
+		_cerrojo.salidaSeccionCritica(numHebra);
+
+		Liberado liberado = _liberados[(numHebra + 1) * SEPARACION];
+		if (liberado != null) {
+			_liberados[(numHebra + 1) * SEPARACION] = null;
+			liberado.end();
+			if (liberado.shouldCommit()) {
+				liberado.numHebra = numHebra;
+				liberado.algoritmo = _algoritmo;
+				liberado.commit();
+			}
+		}
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() { return _cerrojo.maxHebras(); }
+
+	public void registraHebras(Thread[] hebras) { _cerrojo.registraHebras(hebras); }
+
+	/**
+	 * Cambia los contadores del cerrojo envuelto. Con null se ponen
+	 * unos propios si cerrojos.Adquirido está activo (hacen falta para
+	 * sus vueltas), y ninguno si no.
+	 */
+	public void setContadores(Contadores contadores) {
+
+		if ((contadores == null) && ADQUIRIDO.isEnabled())
+			contadores = new Contadores(_numHebras);
+		_contadores = contadores;
+		_cerrojo.setContadores(contadores);
+
+	} // setContadores
+
+	public Carga creaCarga(int numeroSumado) { return _cerrojo.creaCarga(numeroSumado); }
+
+	/**
+	 * Vueltas y suspensiones de una hebra hasta ahora, o 0 si no hay
+	 * contadores.
+	 */
+	private long vueltas(int numHebra) {
+
+		Contadores contadores = _contadores;
+		if (contadores == null)
+			return 0;
+		return contadores.get(numHebra, Contadores.VUELTAS)
+		       + contadores.get(numHebra, Contadores.SUSPENSIONES);
+
+	} // vueltas
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	private static final EventType ESPERA = EventType.getEventType(EsperaIniciada.class);
+
+	private static final EventType ADQUIRIDO = EventType.getEventType(Adquirido.class);
+
+	private static final EventType LIBERADO = EventType.getEventType(Liberado.class);
+
+	private final Cerrojo _cerrojo;
+
+	private final String _algoritmo;
+
+	private final int _numHebras;
+
+	private Contadores _contadores;
+
+	/**
+	 * Separación (en referencias) entre las posiciones de _liberados
+	 * de dos hebras: 128 bytes con referencias comprimidas, para que
+	 * cada hebra escriba en su propia línea de caché.
+	 */
+	private static final int SEPARACION = 32;
+
+	/**
+	 * Evento Liberado en curso de cada hebra, entre la entrada y la
+	 * salida de la sección crítica, en la posición
+	 * (numHebra + 1) * SEPARACION.
+	 */
+	private final Liberado[] _liberados;
+
+} // CerrojoJFR
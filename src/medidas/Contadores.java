@@ -0,0 +1,169 @@
+package medidas;
+
+import java.io.PrintStream;
+
+/**
+ * Contadores de lo que hace cada hebra mientras espera para entrar
+ * en la sección crítica: vueltas de espera activa, llamadas a
+ * Thread.yield(), veces que retira su intención de entrar (el
+ * "dejamos pasar al otro" de Dekker4 y DekkerFinal), esperas por
+ * el turno, veces que se aparca y se despierta e instrucciones atómicas
+ * fallidas.
+ *
+ * Cada hebra escribe sólo en sus contadores, que están separados
+ * de los de las demás hebras por relleno para no compartir línea de
+ * caché. Por eso no hace falta ni sincronización ni volatile: se
+ * leen con imprimeResumen() después del join() de las hebras.
+ */
+public class Contadores {
+
+	/** Vueltas de los bucles de espera activa. */
+	public static final int VUELTAS = 0;
+
+	/** Llamadas a Thread.yield() mientras se espera. */
+	public static final int YIELDS = 1;
+
+	/** Veces que la hebra retira su flag para dejar pasar a la otra. */
+	public static final int RETIRADAS = 2;
+
+	/** Entradas en las que hubo que esperar por el turno. */
+	public static final int ESPERAS_TURNO = 3;
+
+	/** Veces que la hebra se aparca (park()) en la entrada. */
+	public static final int SUSPENSIONES = 4;
+
+	/** Veces que se despierta (unpark()) a otra hebra. */
+	public static final int REANUDACIONES = 5;
+
+	/** Intentos de compareAndSet() (o getAndSet()) fallidos. */
+	public static final int CAS_FALLIDOS = 6;
+
+	/** Entradas en la sección crítica. */
+	public static final int ADQUISICIONES = 7;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numHebras Número de hebras que se van a contar.
+	 */
+	public Contadores(int numHebras) {
+
+		_numHebras = numHebras;
+		_cuentas = new long[(numHebras + 1) * SEPARACION];
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * Incrementa en uno un contador de una hebra.
+	 *
+	 * @param numHebra Número de hebra.
+	 * @param contador Uno de VUELTAS, YIELDS...
+	 */
+	public void cuenta(int numHebra, int contador) {
+
+		_cuentas[(numHebra + 1) * SEPARACION + contador]++;
+
+	} // cuenta
+
+	/**
+	 * Suma una cantidad a un contador de una hebra.
+	 *
+	 * @param numHebra Número de hebra.
+	 * @param contador Uno de VUELTAS, YIELDS...
+	 * @param cantidad Cantidad a sumar.
+	 */
+	public void suma(int numHebra, int contador, long cantidad) {
+
+		_cuentas[(numHebra + 1) * SEPARACION + contador] += cantidad;
+
+	} // suma
+
+	/**
+	 * Devuelve un contador de una hebra.
+	 *
+	 * @param numHebra Número de hebra.
+	 * @param contador Uno de VUELTAS, YIELDS...
+	 * @return Valor del contador.
+	 */
+	public long get(int numHebra, int contador) {
+
+		return _cuentas[(numHebra + 1) * SEPARACION + contador];
+
+	} // get
+
+	/**
+	 * Devuelve la suma de un contador en todas las hebras.
+	 *
+	 * @param contador Uno de VUELTAS, YIELDS...
+	 * @return Total.
+	 */
+	public long getTotal(int contador) {
+
+		long total = 0;
+		for (int h = 0; h < _numHebras; ++h)
+			total += get(h, contador);
+		return total;
+
+	} // getTotal
+
+	//-----------------------------------------------------
+
+	/**
+	 * Escribe el resumen: para cada hebra y para el total, las
+	 * adquisiciones y la media de cada contador por adquisición.
+	 *
+	 * @param salida Dónde escribirlo.
+	 * @param titulo Título (normalmente el nombre del cerrojo).
+	 */
+	public void imprimeResumen(PrintStream salida, String titulo) {
+
+		salida.println(titulo + ": esperas por adquisición");
+		salida.printf("%8s %14s", "Hebra", NOMBRES[ADQUISICIONES]);
+		for (int c = 0; c < ADQUISICIONES; ++c)
+			salida.printf(" %14s", NOMBRES[c]);
+		salida.println();
+		for (int h = 0; h < _numHebras; ++h)
+			imprimeFila(salida, "" + h, get(h, ADQUISICIONES), h);
+		imprimeFila(salida, "total", getTotal(ADQUISICIONES), -1);
+
+	} // imprimeResumen
+
+	private void imprimeFila(PrintStream salida, String hebra, long adquisiciones,
+	                         int numHebra) {
+
+		salida.printf("%8s %14d", hebra, adquisiciones);
+		for (int c = 0; c < ADQUISICIONES; ++c) {
+			long valor = numHebra < 0 ? getTotal(c) : get(numHebra, c);
+			salida.printf(" %14.3f", adquisiciones == 0 ? 0.0 : (double) valor / adquisiciones);
+		}
+		salida.println();
+
+	} // imprimeFila
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Nombres de los contadores, para el resumen.
+	 */
+	private static final String[] NOMBRES = {
+		"vueltas", "yields", "retiradas", "esperasTurno",
+		"suspensiones", "reanudaciones", "casFallidos",
+		"adquisiciones"
+	};
+
+	/**
+	 * Distancia (en longs) entre los contadores de dos hebras: 128
+	 * bytes, dos líneas de caché. La primera fila queda sin usar
+	 * para separar a la hebra 0 de la cabecera del array.
+	 */
+	private static final int SEPARACION = 16;
+
+	private final int _numHebras;
+
+	private final long[] _cuentas;
+
+} // Contadores
@@ -0,0 +1,232 @@
+package medidas;
+
+import java.io.PrintStream;
+
+import cerrojos.Carga;
+import cerrojos.Cerrojo;
+
+/**
+ * Cerrojo que envuelve a otro para medir lo justo que es con las
+ * hebras:
+ *
+ * 	- Adquisiciones de cada hebra.
+ * 	- Racha más larga de adquisiciones seguidas de la misma hebra.
+ * 	- Máximo número de adelantamientos: cuántas veces entró otra
+ * 	  hebra en la sección crítica mientras una esperaba.
+ * 	- Índice de equidad de Jain sobre las adquisiciones de cada
+ * 	  hebra: (Σx)² / (n·Σx²), 1 si todas entran lo mismo y 1/n si
+ * 	  sólo entra una.
+ *
+ * Como en Motor todas las hebras hacen el mismo número de entradas,
+ * al final todas han entrado lo mismo. Por eso las medidas se toman
+ * sólo mientras hay competencia: la "ventana" se cierra en cuanto
+ * la primera hebra termina sus numVeces entradas.
+ *
+ * Todas las anotaciones se hacen dentro de la sección crítica, así
+ * que las protege el propio cerrojo medido. Con cerrojos incorrectos
+ * (Dekker2, p09.a.TestAndSet...) las medidas son aproximadas.
+ */
+public class Equidad implements Cerrojo {
+
+	/**
+	 * Constructor.
+	 *
+	 * @param cerrojo Cerrojo a medir.
+	 * @param numHebras Número de hebras que lo usarán.
+	 * @param numVeces Entradas que hará cada hebra. La ventana de
+	 * medida se cierra cuando una de ellas llega a este número.
+	 */
+	public Equidad(Cerrojo cerrojo, int numHebras, long numVeces) {
+
+		_cerrojo = cerrojo;
+		_numHebras = numHebras;
+		_numVeces = numVeces;
+		_porHebra = new long[(numHebras + 1) * SEPARACION];
+
+	} // constructor
+
+	//-----------------------------------------------------
+	// Cerrojo
+	//-----------------------------------------------------
+
+	public void entradaSeccionCritica(int numHebra) {
+
+		long inicio = _secuencia;
+		_cerrojo.entradaSeccionCritica(numHebra);
+		anota(numHebra, inicio);
+
+	} // entradaSeccionCritica
+
+	public void salidaSeccionCritica(int numHebra) {
+
+		_cerrojo.salidaSeccionCritica(numHebra);
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() { return _cerrojo.maxHebras(); }
+
+	public void registraHebras(Thread[] hebras) { _cerrojo.registraHebras(hebras); }
+
+	public void setContadores(Contadores contadores) { _cerrojo.setContadores(contadores); }
+
+	public Carga creaCarga(int numeroSumado) { return _cerrojo.creaCarga(numeroSumado); }
+
+	//-----------------------------------------------------
+	// Resultados
+	//-----------------------------------------------------
+
+	/**
+	 * Adquisiciones de una hebra dentro de la ventana de medida.
+	 *
+	 * @param numHebra Número de hebra.
+	 * @return Adquisiciones.
+	 */
+	public long getAdquisiciones(int numHebra) {
+
+		return _porHebra[(numHebra + 1) * SEPARACION + ADQUISICIONES];
+
+	} // getAdquisiciones
+
+	/**
+	 * Máximo número de veces que a una hebra la adelantaron otras
+	 * mientras esperaba.
+	 *
+	 * @param numHebra Número de hebra.
+	 * @return Máximo de adelantamientos en una sola espera.
+	 */
+	public long getMaxAdelantamientos(int numHebra) {
+
+		return _porHebra[(numHebra + 1) * SEPARACION + MAX_ADELANTAMIENTOS];
+
+	} // getMaxAdelantamientos
+
+	/**
+	 * Racha más larga de adquisiciones seguidas de la misma hebra.
+	 *
+	 * @return Longitud de la racha.
+	 */
+	public long getRachaMaxima() {
+
+		return _rachaMaxima;
+
+	} // getRachaMaxima
+
+	/**
+	 * Índice de equidad de Jain de las adquisiciones de las hebras
+	 * dentro de la ventana de medida.
+	 *
+	 * @return Índice entre 1/numHebras y 1.
+	 */
+	public double getIndiceJain() {
+
+		double suma = 0, sumaCuadrados = 0;
+		for (int h = 0; h < _numHebras; ++h) {
+			double x = getAdquisiciones(h);
+			suma += x;
+			sumaCuadrados += x * x;
+		}
+		return sumaCuadrados == 0 ? 1.0 : suma * suma / (_numHebras * sumaCuadrados);
+
+	} // getIndiceJain
+
+	/**
+	 * Escribe el resumen de equidad.
+	 *
+	 * @param salida Dónde escribirlo.
+	 * @param titulo Título (normalmente el nombre del cerrojo).
+	 */
+	public void imprimeResumen(PrintStream salida, String titulo) {
+
+		salida.println(titulo + ": equidad (con competencia, "
+		               + _ventana + " adquisiciones)");
+		salida.printf("%8s %14s %14s%n", "Hebra", "adquisiciones", "maxAdelantado");
+		for (int h = 0; h < _numHebras; ++h)
+			salida.printf("%8d %14d %14d%n", h, getAdquisiciones(h), getMaxAdelantamientos(h));
+		salida.printf("  racha máxima %d, índice de Jain %.4f%n",
+		              getRachaMaxima(), getIndiceJain());
+
+	} // imprimeResumen
+
+	//-----------------------------------------------------
+	//                    Métodos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Anota una adquisición. Se llama dentro de la sección crítica.
+	 *
+	 * @param numHebra Hebra que ha entrado.
+	 * @param inicio Valor de _secuencia cuando empezó a esperar.
+	 */
+	private void anota(int numHebra, long inicio) {
+
+		long secuencia = _secuencia;
+		_secuencia = secuencia + 1;
+		if (_ventanaCerrada)
+			return;
+
+		int base = (numHebra + 1) * SEPARACION;
+		long adelantamientos = secuencia - inicio;
+		if (adelantamientos > _porHebra[base + MAX_ADELANTAMIENTOS])
+			_porHebra[base + MAX_ADELANTAMIENTOS] = adelantamientos;
+
+		if (numHebra == _ultimaHebra)
+			++_racha;
+		else {
+			_ultimaHebra = numHebra;
+			_racha = 1;
+		}
+		if (_racha > _rachaMaxima)
+			_rachaMaxima = _racha;
+
+		if (++_porHebra[base + ADQUISICIONES] == _numVeces) {
+			_ventanaCerrada = true;
+			_ventana = secuencia + 1;
+		}
+
+	} // anota
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	private static final int ADQUISICIONES = 0;
+
+	private static final int MAX_ADELANTAMIENTOS = 1;
+
+	/**
+	 * Distancia (en longs) entre los datos de dos hebras, para que
+	 * no compartan línea de caché.
+	 */
+	private static final int SEPARACION = 16;
+
+	private final Cerrojo _cerrojo;
+
+	private final int _numHebras;
+
+	private final long _numVeces;
+
+	/**
+	 * Adquisiciones y máximo de adelantamientos de cada hebra.
+	 */
+	private final long[] _porHebra;
+
+	/**
+	 * Número de adquisiciones hasta ahora. Se escribe dentro de la
+	 * sección crítica, pero las hebras lo leen antes de entrar.
+	 */
+	private volatile long _secuencia = 0;
+
+	private int _ultimaHebra = -1;
+
+	private long _racha = 0;
+
+	private long _rachaMaxima = 0;
+
+	private boolean _ventanaCerrada = false;
+
+	/**
+	 * Adquisiciones totales cuando se cerró la ventana.
+	 */
+	private long _ventana = 0;
+
+} // Equidad
@@ -0,0 +1,367 @@
+package medidas;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Histograma log-lineal de latencias (al estilo de HdrHistogram).
+ *
+ * Los valores se agrupan por potencias de dos, y cada potencia se
+ * divide a su vez en 2^(bitsPrecision - 1) cubos lineales. Así el
+ * error relativo de cualquier valor es menor que 2^-(bitsPrecision-1)
+ * sea cual sea su magnitud, y el histograma cubre desde 0 hasta
+ * Long.MAX_VALUE con un array de tamaño fijo.
+ *
+ * Registrar un valor no reserva memoria ni usa sincronización, así
+ * que cada hebra debe tener su propio histograma. Cuando las hebras
+ * terminan, se juntan con agrega().
+ *
+ * Los histogramas se pueden guardar en binario (escribe()) y leer
+ * después (lee()) para juntar los de varias ejecuciones. El main()
+ * de esta clase junta los ficheros que recibe y escribe la tabla
+ * de percentiles.
+ */
+public class Histograma {
+
+	/**
+	 * Precisión por defecto: 128 cubos por potencia de dos, es decir,
+	 * un error relativo menor del 0,8%.
+	 */
+	public static final int BITS_PRECISION = 8;
+
+	/**
+	 * Constructor con la precisión por defecto.
+	 */
+	public Histograma() {
+
+		this(BITS_PRECISION);
+
+	} // constructor
+
+	/**
+	 * Constructor.
+	 *
+	 * @param bitsPrecision Bits significativos que se conservan de
+	 * cada valor (entre 2 y 20).
+	 */
+	public Histograma(int bitsPrecision) {
+
+		if (bitsPrecision < 2 || bitsPrecision > 20)
+			throw new IllegalArgumentException("bitsPrecision fuera de rango: "
+			                                   + bitsPrecision);
+		_bits = bitsPrecision;
+		_mitad = 1 << (bitsPrecision - 1);
+		_cuentas = new long[(66 - bitsPrecision) * _mitad];
+		reinicia();
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * Registra un valor. No reserva memoria.
+	 *
+	 * @param valor Valor (normalmente nanosegundos). Los negativos
+	 * se cuentan como 0.
+	 */
+	public void registra(long valor) {
+
+		if (valor < 0)
+			valor = 0;
+		_cuentas[indice(valor)]++;
+		_total++;
+		_sumaValores += valor;
+		if (valor < _min)
+			_min = valor;
+		if (valor > _max)
+			_max = valor;
+
+	} // registra
+
+	//-----------------------------------------------------
+
+	/**
+	 * Suma a este histograma las cuentas de otro con la misma
+	 * precisión.
+	 *
+	 * @param otro Histograma a sumar.
+	 */
+	public void agrega(Histograma otro) {
+
+		if (otro._bits != _bits)
+			throw new IllegalArgumentException("Precisiones distintas: "
+			                                   + _bits + " y " + otro._bits);
+		for (int i = 0; i < _cuentas.length; ++i)
+			_cuentas[i] += otro._cuentas[i];
+		_total += otro._total;
+		_sumaValores += otro._sumaValores;
+		_min = Math.min(_min, otro._min);
+		_max = Math.max(_max, otro._max);
+
+	} // agrega
+
+	//-----------------------------------------------------
+
+	/**
+	 * Vacía el histograma.
+	 */
+	public void reinicia() {
+
+		Arrays.fill(_cuentas, 0);
+		_total = 0;
+		_sumaValores = 0;
+		_min = Long.MAX_VALUE;
+		_max = 0;
+
+	} // reinicia
+
+	//-----------------------------------------------------
+
+	/**
+	 * Devuelve el valor por debajo del cual (o igual) está la
+	 * fracción p de los valores registrados. Se devuelve el mayor
+	 * valor equivalente del cubo, acotado por el máximo real.
+	 *
+	 * @param p Fracción entre 0 y 1 (0.99 para el percentil 99).
+	 * @return Valor del percentil, o 0 si está vacío.
+	 */
+	public long percentil(double p) {
+
+		if (_total == 0)
+			return 0;
+		long objetivo = Math.max(1, (long) Math.ceil(p * _total));
+		long acumulado = 0;
+		for (int i = 0; i < _cuentas.length; ++i) {
+			acumulado += _cuentas[i];
+			if (acumulado >= objetivo)
+				return Math.min(_max, Math.max(_min, limiteSuperior(i)));
+		}
+		return _max;
+
+	} // percentil
+
+	public long getTotal() { return _total; }
+
+	public long getMin() { return _total == 0 ? 0 : _min; }
+
+	public long getMax() { return _max; }
+
+	public double getMedia() { return _total == 0 ? 0 : (double) _sumaValores / _total; }
+
+	//-----------------------------------------------------
+
+	/**
+	 * Escribe la tabla de percentiles.
+	 *
+	 * @param salida Dónde escribirla.
+	 * @param unidad Unidad de los valores (para la cabecera).
+	 */
+	public void imprimePercentiles(PrintStream salida, String unidad) {
+
+		salida.printf("%10s %14s%n", "Percentil", unidad);
+		for (double p : PERCENTILES)
+			salida.printf("%10s %14d%n", formatea(p), percentil(p));
+		salida.printf("%10s %14d%n", "máx", getMax());
+		salida.printf("%10s %14.1f%n", "media", getMedia());
+		salida.printf("%10s %14d%n", "total", getTotal());
+
+	} // imprimePercentiles
+
+	//-----------------------------------------------------
+
+	/**
+	 * Guarda el histograma en binario. Sólo se escriben los cubos
+	 * no vacíos.
+	 *
+	 * @param salida Flujo de salida.
+	 * @throws IOException
+	 */
+	public void escribe(DataOutputStream salida) throws IOException {
+
+		int noVacios = 0;
+		for (long c : _cuentas)
+			if (c != 0)
+				noVacios++;
+
+		salida.writeInt(MAGICO);
+		salida.writeByte(_bits);
+		salida.writeLong(_total);
+		salida.writeLong(_sumaValores);
+		salida.writeLong(_min);
+		salida.writeLong(_max);
+		salida.writeInt(noVacios);
+		for (int i = 0; i < _cuentas.length; ++i)
+			if (_cuentas[i] != 0) {
+				salida.writeInt(i);
+				salida.writeLong(_cuentas[i]);
+			}
+
+	} // escribe
+
+	/**
+	 * Lee un histograma guardado con escribe().
+	 *
+	 * @param entrada Flujo de entrada.
+	 * @return Histograma leído.
+	 * @throws IOException si el formato no es correcto.
+	 */
+	public static Histograma lee(DataInputStream entrada) throws IOException {
+
+		if (entrada.readInt() != MAGICO)
+			throw new IOException("No es un histograma");
+		Histograma h = new Histograma(entrada.readByte());
+		h._total = entrada.readLong();
+		h._sumaValores = entrada.readLong();
+		h._min = entrada.readLong();
+		h._max = entrada.readLong();
+		int noVacios = entrada.readInt();
+		for (int i = 0; i < noVacios; ++i) {
+			int indice = entrada.readInt();
+			if (indice < 0 || indice >= h._cuentas.length)
+				throw new IOException("Cubo fuera de rango: " + indice);
+			h._cuentas[indice] = entrada.readLong();
+		}
+		return h;
+
+	} // lee
+
+	/**
+	 * Guarda el histograma en un fichero.
+	 *
+	 * @param fichero Nombre del fichero.
+	 * @throws IOException
+	 */
+	public void escribe(String fichero) throws IOException {
+
+		try (DataOutputStream salida = new DataOutputStream(
+		                   new BufferedOutputStream(new FileOutputStream(fichero)))) {
+			escribe(salida);
+		}
+
+	} // escribe
+
+	/**
+	 * Lee un histograma de un fichero.
+	 *
+	 * @param fichero Nombre del fichero.
+	 * @return Histograma leído.
+	 * @throws IOException
+	 */
+	public static Histograma lee(String fichero) throws IOException {
+
+		try (DataInputStream entrada = new DataInputStream(
+		                    new BufferedInputStream(new FileInputStream(fichero)))) {
+			return lee(entrada);
+		}
+
+	} // lee
+
+	//-----------------------------------------------------
+	//                    Métodos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Cubo en el que cae un valor no negativo.
+	 */
+	private int indice(long valor) {
+
+		int bitAlto = 63 - Long.numberOfLeadingZeros(valor);
+		if (bitAlto < _bits)
+			return (int) valor;
+		int desplazamiento = bitAlto - _bits + 1;
+		return desplazamiento * _mitad + (int) (valor >>> desplazamiento);
+
+	} // indice
+
+	/**
+	 * Mayor valor que cae en el cubo dado.
+	 */
+	private long limiteSuperior(int indice) {
+
+		if (indice < 2 * _mitad)
+			return indice;
+		int desplazamiento = indice / _mitad - 1;
+		long sub = indice - (long) desplazamiento * _mitad;
+		return ((sub + 1) << desplazamiento) - 1;
+
+	} // limiteSuperior
+
+	private static String formatea(double p) {
+
+		String s = Double.toString(p * 100);
+		if (s.endsWith(".0"))
+			s = s.substring(0, s.length() - 2);
+		return s;
+
+	} // formatea
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Programa principal. Lee los histogramas guardados en los
+	 * ficheros recibidos, los junta y escribe sus percentiles.
+	 *
+	 * @param args Ficheros de histogramas.
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length == 0) {
+			System.err.println("Uso: java medidas.Histograma fichero...");
+			return;
+		}
+		Histograma total = null;
+		for (String fichero : args) {
+			Histograma h = lee(fichero);
+			if (total == null)
+				total = h;
+			else
+				total.agrega(h);
+		}
+		total.imprimePercentiles(System.out, "ns");
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Percentiles de la tabla de imprimePercentiles().
+	 */
+	private static final double[] PERCENTILES = {
+		0.5, 0.75, 0.9, 0.99, 0.999, 0.9999
+	};
+
+	/**
+	 * Cabecera de los ficheros binarios ("HIST").
+	 */
+	private static final int MAGICO = 0x48495354;
+
+	private final int _bits;
+
+	/**
+	 * Número de cubos lineales de cada potencia de dos.
+	 */
+	private final int _mitad;
+
+	private final long[] _cuentas;
+
+	private long _total;
+
+	private long _sumaValores;
+
+	private long _min;
+
+	private long _max;
+
+} // Histograma
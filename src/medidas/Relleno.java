@@ -0,0 +1,224 @@
+package medidas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relleno contra la compartición falsa ("false sharing").
+ *
+ * Los dos Flag de _enSeccionCritica de Dekker y Peterson se reservan
+ * uno detrás de otro, y ocupan unos pocos bytes, así que lo normal es
+ * que estén en la misma línea de caché entre sí, con el _turno y con
+ * la _suma de la carga. Cada vez que una hebra escribe su flag
+ * invalida la línea sobre la que está esperando la otra, aunque la
+ * otra no lea ese flag.
+ *
+ * Con la propiedad cerrojos.relleno=true (que medidas.Banco y
+ * Barrido pasan a sus JVM hijas) los protocolos de p04 a p11 usan
+ * FlagConRelleno y TurnoConRelleno, y Cerrojo.creaCarga() usa
+ * Carga.ConRelleno: subclases con 128 bytes de atributos sin usar
+ * detrás del valor, lo mismo que haría @Contended (que no se puede
+ * usar fuera del JDK sin -XX:-RestrictContended). Java no deja poner
+ * atributos delante de los de la clase padre, así que el relleno es
+ * sólo por detrás; por delante cada valor queda separado de lo que
+ * se reservó antes sólo si eso también tiene relleno por detrás.
+ * Para el primer flag, lo anterior es el array _enSeccionCritica (o
+ * _aparcada), que se lee en cada vuelta de la espera: por eso con
+ * relleno el array es más largo (longitudArray()) y sus posiciones
+ * sin usar hacen de relleno. Delante del array queda el propio
+ * cerrojo, cuyos atributos no se escriben después del constructor
+ * (en Motor y Banco la suma va en la Carga).
+ * El recolector de basura puede reordenar los objetos al moverlos,
+ * así que todo esto es lo más probable, no una garantía.
+ *
+ * El main() mide la penalización: ejecuta cada protocolo con dos
+ * hebras, sin y con relleno, cada uno en su JVM hija (como Banco), y
+ * muestra cuánto más rápido va con relleno. Con una sección crítica
+ * corta la diferencia se ve más.
+ *
+ * 	java medidas.Relleno [-p p07.DekkerFinal,p08.Peterson|todos]
+ * 	                     [-l numeroSumado] [-n opsPorHebra]
+ * 	                     [-w calentamiento] [-i pruebas]
+ * 	                     [-t segundosLimite]
+ */
+public class Relleno {
+
+	/**
+	 * Propiedad que activa el relleno.
+	 */
+	public static final String PROPIEDAD = "cerrojos.relleno";
+
+	/**
+	 * Protocolos de las prácticas que tienen relleno. Dekker3 no está
+	 * porque puede interbloquearse (se puede pedir con -p).
+	 */
+	public static final String[] PROTOCOLOS = {
+		"p04.Dekker2", "p06.Dekker4", "p07.DekkerFinal",
+		"p08.Peterson", "p09.Peterson", "p11.Peterson"
+	};
+
+	/**
+	 * Indica si se ha pedido relleno con la propiedad
+	 * cerrojos.relleno.
+	 *
+	 * @return true si hay que usar relleno.
+	 */
+	public static boolean activo() {
+
+		return Boolean.getBoolean(PROPIEDAD);
+
+	} // activo
+
+	/**
+	 * Longitud de un array de referencias que va justo antes de
+	 * objetos con relleno: con relleno, las posiciones usadas seguidas
+	 * de 128 bytes de referencias sin usar (32 referencias
+	 * comprimidas), para que el primer objeto reservado después no
+	 * comparta línea de caché con ellas.
+	 *
+	 * @param usadas Número de posiciones que se usan.
+	 * @param relleno Si se quiere relleno.
+	 * @return Longitud del array.
+	 */
+	public static int longitudArray(int usadas, boolean relleno) {
+
+		return relleno ? usadas + 32 : usadas;
+
+	} // longitudArray
+
+	//-----------------------------------------------------
+
+	/**
+	 * Ejecuta las pruebas de un protocolo en la JVM actual (la hija),
+	 * con el relleno que diga la propiedad, y escribe una línea
+	 * "nombre,opsPorSegundo,correcta" por prueba.
+	 */
+	static void ejecutaPruebas(String nombre, int longitud, long opsPorHebra,
+	                           int calentamiento, int pruebas,
+	                           int segundosLimite) throws InterruptedException {
+
+		long limite = TimeUnit.SECONDS.toNanos(segundosLimite);
+		for (int i = 0; i < calentamiento + pruebas; ++i) {
+			Banco.Iteracion it = Banco.ejecutaIteracion(nombre, 2, longitud,
+			                                            opsPorHebra, limite);
+			if (it == null)
+				return;
+			if (i >= calentamiento)
+				System.out.println(String.format(Locale.ROOT, "%s,%.1f,%b", nombre,
+				                                 it.operaciones * 1e9 / it.nanos,
+				                                 it.correcta));
+		}
+
+	} // ejecutaPruebas
+
+	/**
+	 * Ejecuta las pruebas de un protocolo en una JVM hija, con o sin
+	 * relleno.
+	 *
+	 * @return Mediana de las ops/s, -1 si se bloquea o no termina
+	 * ninguna prueba, o NaN si alguna da una suma incorrecta.
+	 */
+	static double midePorHija(String nombre, boolean relleno, int longitud,
+	                          long opsPorHebra, int calentamiento, int pruebas,
+	                          int segundosLimite) throws Exception {
+
+		System.setProperty(PROPIEDAD, "" + relleno);
+		List<String> args = new ArrayList<String>(Arrays.asList(
+			"-p", nombre, "-l", "" + longitud, "-n", "" + opsPorHebra,
+			"-w", "" + calentamiento, "-i", "" + pruebas,
+			"-t", "" + segundosLimite, "--hija"));
+		final List<Double> medidas = new ArrayList<Double>();
+		final boolean[] correcta = { true };
+		int estado = Banco.lanzaHija(Relleno.class, args,
+		        (long) segundosLimite * (calentamiento + pruebas + 1),
+		        linea -> {
+		        	String[] campos = linea.split(",");
+		        	if ((campos.length == 3) && campos[0].equals(nombre)) {
+		        		medidas.add(Double.parseDouble(campos[1]));
+		        		correcta[0] &= Boolean.parseBoolean(campos[2]);
+		        	}
+		        	else
+		        		System.err.println(linea);
+		        });
+		if (!correcta[0])
+			return Double.NaN;
+		if ((estado != 0) || (medidas.size() < pruebas))
+			return -1;
+		medidas.sort(null);
+		return medidas.get(medidas.size() / 2);
+
+	} // midePorHija
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Programa principal.
+	 *
+	 * @param args Ver el comentario de la clase.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+
+		String[] protocolos = PROTOCOLOS;
+		int longitud = 1;
+		long opsPorHebra = 1000000;
+		int calentamiento = 2;
+		int pruebas = 5;
+		int segundosLimite = 30;
+		boolean hija = false;
+
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-p":
+				if (!args[++i].equals("todos"))
+					protocolos = args[i].split(",");
+				break;
+			case "-l": longitud = Integer.parseInt(args[++i]); break;
+			case "-n": opsPorHebra = Long.parseLong(args[++i]); break;
+			case "-w": calentamiento = Integer.parseInt(args[++i]); break;
+			case "-i": pruebas = Integer.parseInt(args[++i]); break;
+			case "-t": segundosLimite = Integer.parseInt(args[++i]); break;
+			case "--hija": hija = true; break;
+			default:
+				throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+			}
+		}
+
+		if (hija) {
+			ejecutaPruebas(protocolos[0], longitud, opsPorHebra, calentamiento,
+			               pruebas, segundosLimite);
+			// Puede haber hebras bloqueadas (daemon).
+			System.exit(0);
+		}
+
+		System.out.printf("%-20s %18s %18s %8s%n", "Protocolo",
+		                  "sin relleno ops/s", "con relleno ops/s", "con/sin");
+		for (String nombre : protocolos) {
+			double sin = midePorHija(nombre, false, longitud, opsPorHebra,
+			                         calentamiento, pruebas, segundosLimite);
+			double con = midePorHija(nombre, true, longitud, opsPorHebra,
+			                         calentamiento, pruebas, segundosLimite);
+			System.out.printf(Locale.ROOT, "%-20s %18s %18s %8s%n", nombre,
+			                  texto(sin), texto(con),
+			                  ((sin > 0) && (con > 0)) ? String.format(Locale.ROOT,
+			                                             "%.2fx", con / sin) : "-");
+		}
+
+	} // main
+
+	static String texto(double opsPorSegundo) {
+
+		if (Double.isNaN(opsPorSegundo))
+			return "¡CARRERA!";
+		if (opsPorSegundo < 0)
+			return "BLOQUEADO";
+		return String.format(Locale.ROOT, "%.1f", opsPorSegundo);
+
+	} // texto
+
+} // Relleno
@@ -1,5 +1,7 @@
 package p03;
 
+import medidas.Contadores;
+
 /**
  * Clase de ejemplo que busca conseguir una condición de carrera
  * de dos hebras. Implementa el interfaz Runnable y tiene un main.
@@ -104,10 +106,16 @@ public class Dekker1 implements Runnable {
 	 */
 	protected void entradaSeccionCritica(int numHebra) {
 
+		int vueltas = 0;
 		while(_turno != numHebra)
-			;//Thread.yield(); // Paliar un poco la espera activa en monoprocesador.
+			++vueltas;//Thread.yield(); // Paliar un poco la espera activa en monoprocesador.
 		// ¡Nos toca!
 
+		if ((_contadores != null) && (vueltas > 0)) {
+			_contadores.cuenta(numHebra, Contadores.ESPERAS_TURNO);
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+		}
+
 	} // entradaSeccionCritica
 
 	/**
@@ -132,6 +140,23 @@ public class Dekker1 implements Runnable {
 	 */
 	protected volatile int _turno = 0;
 
+	/**
+	 * Activa los contadores de espera de entradaSeccionCritica().
+	 * Con null (el valor por defecto) no se cuenta nada.
+	 * 
+	 * @param contadores Contadores, o null.
+	 */
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
+
 	//-----------------------------------------------------
 	//                    Métodos estáticos
 	//-----------------------------------------------------
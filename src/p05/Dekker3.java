@@ -1,5 +1,8 @@
 package p05;
 
+import medidas.Contadores;
+import medidas.Relleno;
+
 /**
  * Clase de ejemplo que busca conseguir una condición de carrera
  * de dos hebras. Implementa el interfaz Runnable y tiene un main.
@@ -34,13 +37,27 @@ public class Dekker3 implements Runnable {
 
 	/**
 	 * Constructor. Inicializa los atributos que mantienen el estado
-	 * de la sección crítica.
+	 * de la sección crítica, con relleno si se pide con la propiedad
+	 * cerrojos.relleno (ver medidas.Relleno).
 	 */
 	public Dekker3() {
+
+		this(Relleno.activo());
+
+	} // constructor
+
+	/**
+	 * Constructor. Inicializa los atributos que mantienen el estado
+	 * de la sección crítica.
+	 * 
+	 * @param relleno Si es true, cada flag ocupa sus propias
+	 * líneas de caché.
+	 */
+	public Dekker3(boolean relleno) {
 		
-		_enSeccionCritica = new Flag[2];
-		_enSeccionCritica[0] = new Flag();
-		_enSeccionCritica[1] = new Flag();
+		_enSeccionCritica = new Flag[Relleno.longitudArray(2, relleno)];
+		_enSeccionCritica[0] = relleno ? new FlagConRelleno() : new Flag();
+		_enSeccionCritica[1] = relleno ? new FlagConRelleno() : new Flag();
 
 	} // constructor
 
@@ -131,8 +148,15 @@ public class Dekker3 implements Runnable {
 		//Thread.yield();
 
 		int otraHebra = numHebra ^ 0x1;
-		while(_enSeccionCritica[otraHebra].valor)
+		int vueltas = 0;
+		while(_enSeccionCritica[otraHebra].valor) {
+			++vueltas;
 			Thread.yield(); // Paliar un poco la espera activa en monoprocesador.
+		}
+		if ((_contadores != null) && (vueltas > 0)) {
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+			_contadores.suma(numHebra, Contadores.YIELDS, vueltas);
+		}
 		
 		// ¡Está libre!
 
@@ -160,8 +184,32 @@ public class Dekker3 implements Runnable {
 		public volatile boolean valor = false;
 	} // class Flag
 
+	/**
+	 * Flag con 128 bytes de relleno detrás (ver medidas.Relleno).
+	 */
+	class FlagConRelleno extends Flag {
+		long r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15;
+	} // class FlagConRelleno
+
 	protected Flag[] _enSeccionCritica; // Inicialización en el constructor
 
+	/**
+	 * Activa los contadores de espera de entradaSeccionCritica().
+	 * Con null (el valor por defecto) no se cuenta nada.
+	 * 
+	 * @param contadores Contadores, o null.
+	 */
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
+
 	//-----------------------------------------------------
 	//                    Métodos estáticos
 	//-----------------------------------------------------
@@ -1,5 +1,8 @@
 package p07;
 
+import medidas.Contadores;
+import medidas.Relleno;
+
 /**
  * Clase de ejemplo que busca conseguir una condición de carrera
  * de dos hebras. Implementa el interfaz Runnable y tiene un main.
@@ -34,13 +37,28 @@ public class DekkerFinal implements Runnable {
 
 	/**
 	 * Constructor. Inicializa los atributos que mantienen el estado
-	 * de la sección crítica.
+	 * de la sección crítica, con relleno si se pide con la propiedad
+	 * cerrojos.relleno (ver medidas.Relleno).
 	 */
 	public DekkerFinal() {
+
+		this(Relleno.activo());
+
+	} // constructor
+
+	/**
+	 * Constructor. Inicializa los atributos que mantienen el estado
+	 * de la sección crítica.
+	 * 
+	 * @param relleno Si es true, cada flag y el turno ocupan sus propias
+	 * líneas de caché.
+	 */
+	public DekkerFinal(boolean relleno) {
 		
-		_enSeccionCritica = new Flag[2];
-		_enSeccionCritica[0] = new Flag();
-		_enSeccionCritica[1] = new Flag();
+		_enSeccionCritica = new Flag[Relleno.longitudArray(2, relleno)];
+		_enSeccionCritica[0] = relleno ? new FlagConRelleno() : new Flag();
+		_enSeccionCritica[1] = relleno ? new FlagConRelleno() : new Flag();
+		_turno = relleno ? new TurnoConRelleno() : new Turno();
 
 	} // constructor
 
@@ -120,14 +138,20 @@ public class DekkerFinal implements Runnable {
 		_enSeccionCritica[numHebra].valor = true;
 
 		int otraHebra = numHebra ^ 0x1;
+		int vueltas = 0, retiradas = 0, esperasTurno = 0;
 		while(_enSeccionCritica[otraHebra].valor) {
-			if (_turno == otraHebra) {
+			++vueltas;
+			if (_turno.valor == otraHebra) {
 				// El turno es de la otra hebra. La dejamos
 				// pasar, anulando nuestra intención de entrar
 				// como haríamos en el cuarto intento.
 				_enSeccionCritica[numHebra].valor = false;
-				while(_turno == otraHebra)
-					; // Espera activa
+				++retiradas;
+				int antes = vueltas;
+				while(_turno.valor == otraHebra)
+					++vueltas; // Espera activa
+				if (vueltas > antes)
+					++esperasTurno;
 				_enSeccionCritica[numHebra].valor = true;
 			}
 			else {
@@ -138,6 +162,13 @@ public class DekkerFinal implements Runnable {
 				;
 			}
 		} // while
+		if ((_contadores != null) && (vueltas > 0)) {
+			// Al retirarse, el turno puede haber cambiado ya: sólo
+			// es espera por turno si se llega a dar alguna vuelta.
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+			_contadores.suma(numHebra, Contadores.RETIRADAS, retiradas);
+			_contadores.suma(numHebra, Contadores.ESPERAS_TURNO, esperasTurno);
+		}
 		
 		// ¡Está libre!
 
@@ -154,7 +185,7 @@ public class DekkerFinal implements Runnable {
 	protected void salidaSeccionCritica(int numHebra) {
 		
 		int otraHebra = numHebra ^ 0x1;
-		_turno = otraHebra;
+		_turno.valor = otraHebra;
 		_enSeccionCritica[numHebra].valor = false;
 				
 	} // salidaSeccionCritica
@@ -167,13 +198,53 @@ public class DekkerFinal implements Runnable {
 		public volatile boolean valor = false;
 	} // class Flag
 
+	/**
+	 * Flag con 128 bytes de relleno detrás (ver medidas.Relleno).
+	 */
+	class FlagConRelleno extends Flag {
+		long r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15;
+	} // class FlagConRelleno
+
 	protected Flag[] _enSeccionCritica; // Inicialización en el constructor
 
+	/**
+	 * Clase ("estructura") con el número de hebra que tiene el
+	 * turno. Como el Flag, es un objeto aparte para poder ponerle
+	 * relleno.
+	 */
+	class Turno {
+		public volatile int valor = 0;
+	} // class Turno
+
+	/**
+	 * Turno con 128 bytes de relleno detrás (ver medidas.Relleno).
+	 */
+	class TurnoConRelleno extends Turno {
+		long r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15;
+	} // class TurnoConRelleno
+
 	/**
 	 * Hebra que tiene el turno para entrar en la sección crítica (en caso
 	 * de "empate").
 	 */
-	protected volatile int _turno = 0;
+	protected Turno _turno; // Inicialización en el constructor
+
+	/**
+	 * Activa los contadores de espera de entradaSeccionCritica().
+	 * Con null (el valor por defecto) no se cuenta nada.
+	 * 
+	 * @param contadores Contadores, o null.
+	 */
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
 
 	//-----------------------------------------------------
 	//                    Métodos estáticos
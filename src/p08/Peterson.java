@@ -1,5 +1,8 @@
 package p08;
 
+import medidas.Contadores;
+import medidas.Relleno;
+
 /**
  * Clase de ejemplo que busca conseguir una condición de carrera
  * de dos hebras. Implementa el interfaz Runnable y tiene un main.
@@ -34,13 +37,28 @@ public class Peterson implements Runnable {
 
 	/**
 	 * Constructor. Inicializa los atributos que mantienen el estado
-	 * de la sección crítica.
+	 * de la sección crítica, con relleno si se pide con la propiedad
+	 * cerrojos.relleno (ver medidas.Relleno).
 	 */
 	public Peterson() {
+
+		this(Relleno.activo());
+
+	} // constructor
+
+	/**
+	 * Constructor. Inicializa los atributos que mantienen el estado
+	 * de la sección crítica.
+	 * 
+	 * @param relleno Si es true, cada flag y el turno ocupan sus propias
+	 * líneas de caché.
+	 */
+	public Peterson(boolean relleno) {
 		
-		_enSeccionCritica = new Flag[2];
-		_enSeccionCritica[0] = new Flag();
-		_enSeccionCritica[1] = new Flag();
+		_enSeccionCritica = new Flag[Relleno.longitudArray(2, relleno)];
+		_enSeccionCritica[0] = relleno ? new FlagConRelleno() : new Flag();
+		_enSeccionCritica[1] = relleno ? new FlagConRelleno() : new Flag();
+		_turno = relleno ? new TurnoConRelleno() : new Turno();
 
 	} // constructor
 
@@ -121,10 +139,15 @@ public class Peterson implements Runnable {
 
 		int otraHebra = numHebra ^ 0x1;
 		
-		_turno = otraHebra;
+		_turno.valor = otraHebra;
+		int vueltas = 0;
 		while(_enSeccionCritica[otraHebra].valor &&
-		      (_turno == otraHebra))
-			;
+		      (_turno.valor == otraHebra))
+			++vueltas;
+		if ((_contadores != null) && (vueltas > 0)) {
+			_contadores.cuenta(numHebra, Contadores.ESPERAS_TURNO);
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+		}
 		
 		// ¡Está libre!
 
@@ -152,13 +175,53 @@ public class Peterson implements Runnable {
 		public volatile boolean valor = false;
 	} // class Flag
 
+	/**
+	 * Flag con 128 bytes de relleno detrás (ver medidas.Relleno).
+	 */
+	class FlagConRelleno extends Flag {
+		long r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15;
+	} // class FlagConRelleno
+
 	protected Flag[] _enSeccionCritica; // Inicialización en el constructor
 
+	/**
+	 * Clase ("estructura") con el número de hebra que tiene el
+	 * turno. Como el Flag, es un objeto aparte para poder ponerle
+	 * relleno.
+	 */
+	class Turno {
+		public volatile int valor = 0;
+	} // class Turno
+
+	/**
+	 * Turno con 128 bytes de relleno detrás (ver medidas.Relleno).
+	 */
+	class TurnoConRelleno extends Turno {
+		long r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15;
+	} // class TurnoConRelleno
+
 	/**
 	 * Hebra que tiene el turno para entrar en la sección crítica (en caso
 	 * de "empate").
 	 */
-	protected volatile int _turno = 0;
+	protected Turno _turno; // Inicialización en el constructor
+
+	/**
+	 * Activa los contadores de espera de entradaSeccionCritica().
+	 * Con null (el valor por defecto) no se cuenta nada.
+	 * 
+	 * @param contadores Contadores, o null.
+	 */
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
 
 	//-----------------------------------------------------
 	//                    Métodos estáticos
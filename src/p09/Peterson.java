@@ -1,5 +1,11 @@
 package  p09;
 
+import java.util.concurrent.locks.LockSupport;
+
+import medidas.Calibrado;
+import medidas.Contadores;
+import medidas.Relleno;
+
 /**
  * Clase de ejemplo que busca conseguir una condición de carrera
  * de dos hebras. Implementa el interfaz Runnable y tiene un main.
@@ -14,10 +20,29 @@ package  p09;
  * valor final esperado, para compararlo con el conseguido.
  * 
  * Para evitar la condición de carrera, se hace uso del algoritmo
- * de Peterson, pero donde usamos suspend() y resume() para no hacer
- * espera activa. Sin embargo, esto añade una condición de carrera
- * que puede hacer que las dos hebras terminen suspendidas, por lo
- * que la solución no es correcta.
+ * de Peterson, pero sin espera activa indefinida: la hebra que espera
+ * da unas pocas vueltas y, si no le llega el turno, se aparca.
+ *
+ * La primera versión usaba suspend() y resume(), y eso añadía una
+ * condición de carrera: si la otra hebra salía y hacía el resume()
+ * entre la comprobación del while y el suspend(), el resume() se
+ * perdía y las dos hebras podían terminar suspendidas. Además
+ * suspend() y resume() ya no funcionan en las versiones actuales de
+ * Java.
+ *
+ * Ahora se usa LockSupport.park() y unpark(), que no pierden el
+ * aviso aunque llegue antes del park(), y cada hebra anuncia que se
+ * va a aparcar (_aparcada) antes de volver a comprobar la condición.
+ * La otra hebra mira ese anuncio después de cambiar algo que pueda
+ * dejarla entrar (su _enSeccionCritica al salir, o el _turno al
+ * entrar), así que o la que espera ve el cambio y no se aparca, o la
+ * otra ve el anuncio y la despierta.
+ *
+ * Las vueltas antes de aparcarse se calibran con
+ * medidas.Calibrado. Para comparar tiempo de CPU y latencias con la
+ * espera activa pura de p08:
+ *
+ * 	java medidas.Banco -p p08.Peterson,p09.Peterson -h 2
  * 
  * @author Pedro Pablo Gómez Martín
  */
@@ -37,18 +62,44 @@ public class Peterson implements Runnable {
 
 	/**
 	 * Constructor. Inicializa los atributos que mantienen el estado
-	 * de la sección crítica.
+	 * de la sección crítica, con relleno si se pide con la propiedad
+	 * cerrojos.relleno (ver medidas.Relleno).
 	 */
 	public Peterson() {
+
+		this(Relleno.activo());
+
+	} // constructor
+
+	/**
+	 * Constructor. Inicializa los atributos que mantienen el estado
+	 * de la sección crítica.
+	 * 
+	 * @param relleno Si es true, cada flag y el turno ocupan sus propias
+	 * líneas de caché.
+	 */
+	public Peterson(boolean relleno) {
 		
-		_enSeccionCritica = new Flag[2];
-		_enSeccionCritica[0] = new Flag();
-		_enSeccionCritica[1] = new Flag();
+		_enSeccionCritica = new Flag[Relleno.longitudArray(2, relleno)];
+		_enSeccionCritica[0] = relleno ? new FlagConRelleno() : new Flag();
+		_enSeccionCritica[1] = relleno ? new FlagConRelleno() : new Flag();
+		_aparcada = new Flag[Relleno.longitudArray(2, relleno)];
+		_aparcada[0] = relleno ? new FlagConRelleno() : new Flag();
+		_aparcada[1] = relleno ? new FlagConRelleno() : new Flag();
+		_turno = relleno ? new TurnoConRelleno() : new Turno();
+		_vueltasAntesDeAparcar = Calibrado.vueltasAntesDeAparcar();
 
 	} // constructor
 
 	//-----------------------------------------------------
 
+	/**
+	 * Indica de antemano las hebras que van a usar la sección
+	 * crítica. Es opcional: cada hebra se apunta antes de aparcarse.
+	 *
+	 * @param t0 Hebra 0.
+	 * @param t1 Hebra 1.
+	 */
 	public void setThreads(Thread t0, Thread t1) {
 
 		_threads[0] = t0;
@@ -133,10 +184,33 @@ public class Peterson implements Runnable {
 
 		int otraHebra = numHebra ^ 0x1;
 		
-		_turno = otraHebra;
+		_turno.valor = otraHebra;
+		// Al ceder el turno puede que la otra hebra ya pueda entrar.
+		despierta(numHebra, otraHebra);
+
+		int vueltas = 0, aparcamientos = 0;
 		while(_enSeccionCritica[otraHebra].valor &&
-		      (_turno == otraHebra))
-			Thread.currentThread().suspend();
+		      (_turno.valor == otraHebra)) {
+			if (vueltas < _vueltasAntesDeAparcar) {
+				++vueltas; // Espera activa
+				continue;
+			}
+			_threads[numHebra] = Thread.currentThread();
+			_aparcada[numHebra].valor = true;
+			// Volvemos a comprobar después de anunciarlo: si la
+			// otra hebra ha cambiado algo antes de ver el anuncio,
+			// lo vemos aquí.
+			if (_enSeccionCritica[otraHebra].valor && (_turno.valor == otraHebra)) {
+				LockSupport.park(this);
+				++aparcamientos;
+			}
+			_aparcada[numHebra].valor = false;
+		}
+		if ((_contadores != null) && (vueltas > 0)) {
+			_contadores.cuenta(numHebra, Contadores.ESPERAS_TURNO);
+			_contadores.suma(numHebra, Contadores.VUELTAS, vueltas);
+			_contadores.suma(numHebra, Contadores.SUSPENSIONES, aparcamientos);
+		}
 		
 		// ¡Está libre!
 
@@ -155,12 +229,28 @@ public class Peterson implements Runnable {
 		_enSeccionCritica[numHebra].valor = false;
 
 		int otraHebra = numHebra ^ 0x1;
-		// Un resume a una hebra no suspendida es inocuo. La
-		// "despertamos" siempre.
-		_threads[otraHebra].resume();
+		despierta(numHebra, otraHebra);
 				
 	} // salidaSeccionCritica
 
+	/**
+	 * Despierta a la otra hebra si se ha aparcado (o está a punto).
+	 * Un unpark() antes del park() no se pierde: el park() vuelve
+	 * inmediatamente.
+	 * 
+	 * @param numHebra Hebra que despierta.
+	 * @param otraHebra Hebra a despertar.
+	 */
+	protected void despierta(int numHebra, int otraHebra) {
+
+		if (_aparcada[otraHebra].valor) {
+			LockSupport.unpark(_threads[otraHebra]);
+			if (_contadores != null)
+				_contadores.cuenta(numHebra, Contadores.REANUDACIONES);
+		}
+
+	} // despierta
+
 	/**
 	 * Clase ("estructura") con un único booleano. Lo importante
 	 * del booleano es que es volátil.
@@ -169,19 +259,69 @@ public class Peterson implements Runnable {
 		public volatile boolean valor = false;
 	} // class Flag
 
+	/**
+	 * Flag con 128 bytes de relleno detrás (ver medidas.Relleno).
+	 */
+	class FlagConRelleno extends Flag {
+		long r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15;
+	} // class FlagConRelleno
+
 	protected Flag[] _enSeccionCritica; // Inicialización en el constructor
 
+	/**
+	 * Hebras que se han aparcado (o van a hacerlo) esperando su turno.
+	 */
+	protected Flag[] _aparcada; // Inicialización en el constructor
+
+	/**
+	 * Vueltas de espera activa antes de aparcarse.
+	 */
+	protected int _vueltasAntesDeAparcar;
+
 	/**
 	 * Hebras que están ejecutando la clase y que entran en juego
 	 * en la exclusión mutua.
 	 */
 	protected Thread[] _threads = new Thread[2];
 
+	/**
+	 * Clase ("estructura") con el número de hebra que tiene el
+	 * turno. Como el Flag, es un objeto aparte para poder ponerle
+	 * relleno.
+	 */
+	class Turno {
+		public volatile int valor = 0;
+	} // class Turno
+
+	/**
+	 * Turno con 128 bytes de relleno detrás (ver medidas.Relleno).
+	 */
+	class TurnoConRelleno extends Turno {
+		long r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15;
+	} // class TurnoConRelleno
+
 	/**
 	 * Hebra que tiene el turno para entrar en la sección crítica (en caso
 	 * de "empate").
 	 */
-	protected volatile int _turno = 0;
+	protected Turno _turno; // Inicialización en el constructor
+
+	/**
+	 * Activa los contadores de espera de entradaSeccionCritica().
+	 * Con null (el valor por defecto) no se cuenta nada.
+	 * 
+	 * @param contadores Contadores, o null.
+	 */
+	public void setContadores(Contadores contadores) {
+
+		_contadores = contadores;
+
+	} // setContadores
+
+	/**
+	 * Contadores de espera (opcionales).
+	 */
+	protected Contadores _contadores = null;
 
 	//-----------------------------------------------------
 	//                    Métodos estáticos
@@ -1,6 +1,10 @@
 package p11;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import medidas.Calibrado;
 
 /**
  * Clase de ejemplo que busca conseguir una condición de carrera
@@ -19,6 +23,24 @@ import java.util.concurrent.atomic.AtomicInteger;
  * "Test and Set" proporcionada por Java en la clase
  * java.util.concurrent.atomic.AtomicInteger.
  * 
+ * Para no hacer espera activa indefinida, la hebra que no consigue
+ * el cerrojo da unas pocas vueltas (calibradas con
+ * medidas.Calibrado) y después se aparca con LockSupport.park(),
+ * dejándose apuntada en la pila _waitingThreads. La que sale lo
+ * suelta y, si hay alguien apuntado, despierta sólo a una con
+ * unpark(). Como quien espera se apunta antes de volver a probar el
+ * cerrojo, y quien sale mira si hay alguien apuntado después de
+ * soltarlo, el aviso no se pierde (con suspend() y resume() sí podía
+ * perderse).
+ * 
+ * La pila es de Treiber (sin cerrojos: se apila y desapila con
+ * compareAndSet() sobre la cima), y sólo se apuntan las hebras que
+ * se van a aparcar. Con una sola hebra apuntada como antes, con más
+ * de dos hebras las demás se quedaban dormidas para siempre. Sin
+ * competencia, salir cuesta soltar el cerrojo y leer la cima vacía.
+ * No se despierta en orden de llegada, pero con "test and set" la que
+ * despierta tampoco tiene garantizado entrar: otra puede colarse.
+ * 
  * @author Pedro Pablo Gómez Martín
  */
 public class TestAndSet implements Runnable {
@@ -38,7 +60,31 @@ public class TestAndSet implements Runnable {
 	public static final long NUM_VECES = 10000;
 
 	
-	protected Thread _waitingThread;
+	/**
+	 * Apunte de una hebra aparcada (o a punto de aparcarse) esperando
+	 * el cerrojo. Cada vez que una hebra se apunta usa uno nuevo, así
+	 * que la pila nunca tiene el mismo nodo dos veces.
+	 */
+	protected static class Nodo {
+		public final Thread hebra = Thread.currentThread();
+		/** Nodo de debajo en la pila. */
+		public Nodo siguiente;
+		/** Lo ha desapilado alguien al salir, y la ha despertado. */
+		public volatile boolean despertada = false;
+		/** La hebra ha entrado sin que la despierten; hay que saltarlo. */
+		public volatile boolean cancelada = false;
+	} // class Nodo
+
+	/**
+	 * Cima de la pila de hebras aparcadas (o a punto de aparcarse)
+	 * esperando el cerrojo, o null si no hay ninguna.
+	 */
+	protected final AtomicReference<Nodo> _waitingThreads = new AtomicReference<Nodo>(null);
+
+	/**
+	 * Vueltas de espera activa antes de aparcarse.
+	 */
+	protected final int _vueltasAntesDeAparcar = Calibrado.vueltasAntesDeAparcar();
 
 	/**
 	 * Método estático que devuelve acumulador + n. Hace la
@@ -103,11 +149,30 @@ public class TestAndSet implements Runnable {
 	 */
 	protected void entradaSeccionCritica() {
 
+		int vueltas = 0;
+		Nodo apunte = null;
 		while(!testAndSet())
 		{
-			_waitingThread = Thread.currentThread();
-			Thread.currentThread().suspend();
+			if (vueltas < _vueltasAntesDeAparcar) {
+				++vueltas; // Espera activa
+				continue;
+			}
+			if ((apunte == null) || apunte.despertada) {
+				// Nos apuntamos y volvemos a probar: si lo han soltado
+				// antes de vernos apuntados, lo vemos al probar y no
+				// nos aparcamos.
+				apunte = new Nodo();
+				apila(apunte);
+				continue;
+			}
+			LockSupport.park(this);
 		}
+		if ((apunte != null) && !apunte.despertada)
+			// Hemos entrado sin que nos despierten: que al salir no
+			// se gaste el aviso en nosotros. Si ya lo han gastado,
+			// no se pierde, porque el cerrojo es nuestro y lo
+			// daremos al salir.
+			apunte.cancelada = true;
 		
 	} // entradaSeccionCritica
 
@@ -119,14 +184,51 @@ public class TestAndSet implements Runnable {
 	protected void salidaSeccionCritica() {
 		
 		_cerrojo.set(0);
-		Thread wt = _waitingThread;
-		if (wt != null){
-			_waitingThread = null;
-			wt.resume();
+		if (_waitingThreads.get() == null)
+			return; // Nadie esperando.
+		Nodo n;
+		while ((n = desapila()) != null) {
+			if (!n.cancelada) {
+				n.despertada = true;
+				LockSupport.unpark(n.hebra);
+				break;
+			}
 		}
 		
 	} // salidaSeccionCritica
 
+	/**
+	 * Pone un nodo en la cima de _waitingThreads.
+	 * 
+	 * @param n Nodo nuevo.
+	 */
+	protected void apila(Nodo n) {
+
+		Nodo cima;
+		do {
+			cima = _waitingThreads.get();
+			n.siguiente = cima;
+		} while (!_waitingThreads.compareAndSet(cima, n));
+
+	} // apila
+
+	/**
+	 * Quita el nodo de la cima de _waitingThreads.
+	 * 
+	 * @return Nodo quitado, o null si estaba vacía.
+	 */
+	protected Nodo desapila() {
+
+		Nodo cima;
+		do {
+			cima = _waitingThreads.get();
+			if (cima == null)
+				return null;
+		} while (!_waitingThreads.compareAndSet(cima, cima.siguiente));
+		return cima;
+
+	} // desapila
+
 	/**
 	 * Realiza la instrucción "test and set" sobre el atributo
 	 * _cerrojo. Se usa en entradaSeccionCritica().
@@ -147,29 +249,30 @@ public class TestAndSet implements Runnable {
 
 	/**
 	 * Programa principal. Crea una instancia de esta clase, y la
-	 * ejecuta simultáneamente en dos hebras diferentes. Espera a que
-	 * ambas terminen y mira el valor sumado final, comprobando si es
-	 * el esperado.
+	 * ejecuta simultáneamente en varias hebras diferentes (dos, si no
+	 * se indica otra cosa). Espera a que todas terminen y mira el
+	 * valor sumado final, comprobando si es el esperado.
 	 * 
-	 * @param args Parámetros de la aplicación. Se ignoran.
+	 * @param args Número de hebras (opcional).
 	 * @throws InterruptedException
 	 */
 	public static void main(String[] args) throws InterruptedException {
 		
+		int numHebras = (args.length > 0) ? Integer.parseInt(args[0]) : 2;
 		TestAndSet racer = new TestAndSet();
-		Thread t1, t2;
+		Thread[] hebras = new Thread[numHebras];
 		
-		t1 = new Thread(racer, "Hebra0"); // Los nombres ya no son
-		t2 = new Thread(racer, "Hebra1"); // imprescindibles...
+		for (int i = 0; i < numHebras; ++i)
+			hebras[i] = new Thread(racer, "Hebra" + i);
 
-		t1.start();
-		t2.start();
+		for (Thread t : hebras)
+			t.start();
 
 		long resultadoEsperado;
-		resultadoEsperado = NUMERO_SUMADO * NUM_VECES * 2;
+		resultadoEsperado = NUMERO_SUMADO * NUM_VECES * numHebras;
 
-		t1.join();
-		t2.join();
+		for (Thread t : hebras)
+			t.join();
 
 		System.out.println("El resultado final es " + racer.getSuma());
 		System.out.println("Esperábamos " + resultadoEsperado);
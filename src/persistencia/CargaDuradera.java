@@ -0,0 +1,323 @@
+package persistencia;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cerrojos.Carga;
+import cerrojos.Cerrojo;
+import cerrojos.Cerrojos;
+import cerrojos.Motor;
+import procesos.Lanzador;
+
+/**
+ * Carga cuyos incrementos son duraderos: además de sumar en memoria,
+ * cada entrada en la sección crítica añade un registro a un Diario, y
+ * confirma() (que Motor y medidas.Banco llaman tras
+ * salidaSeccionCritica()) espera a que ese registro esté en disco.
+ * La espera es fuera de la sección crítica, así que mientras una
+ * hebra espera su fsync las demás siguen entrando y sus registros van
+ * al mismo lote. La suma no empieza en cero, sino en lo que ya hubiera
+ * en el diario, así que tras una caída se sigue donde se quedó.
+ *
+ * Motor y Banco la usan en lugar de la Carga normal con la propiedad
+ * cerrojos.diario=fichero (ver dePropiedades()).
+ *
+ * El main() mide lo que cuesta el fsync por incremento con y sin
+ * lotes, y comprueba que al volver a abrir el diario se recupera el
+ * valor del contador:
+ *
+ * 	java persistencia.CargaDuradera [-p cerrojo] [-h hebras]
+ * 	                                [-v vecesPorHebra] [-d directorio]
+ * 	                                [-c lote:microsegundos,...]
+ * 	                                [--caida segundos]
+ *
+ * Cada configuración de -c es el máximo de registros por fsync y lo
+ * que espera la escritora a que se junten (1:0 es sin lotes, un fsync
+ * por incremento). Con --caida, además, lanza una JVM hija que suma
+ * sin parar sobre un diario, la mata (SIGKILL en Linux) y comprueba
+ * que al reproducirlo no falta nada de lo que la hija dio por
+ * confirmado; luego lanza otra sobre el mismo diario, que tiene que
+ * seguir desde el valor reproducido, y la mata también. Eso prueba la
+ * caída del proceso, no la del sistema: para eso hace falta cortar la
+ * corriente, y un disco que respete el fsync.
+ */
+public class CargaDuradera extends Carga {
+
+	/**
+	 * Propiedad con el fichero del diario de Motor y Banco.
+	 */
+	public static final String PROPIEDAD = "cerrojos.diario";
+
+	/**
+	 * Propiedad con el máximo de registros por fsync (64 si no está).
+	 */
+	public static final String PROPIEDAD_LOTE = "cerrojos.diario.lote";
+
+	/**
+	 * Propiedad con los microsegundos que espera la escritora a que se
+	 * junten registros (0 si no está).
+	 */
+	public static final String PROPIEDAD_INTERVALO = "cerrojos.diario.intervalo";
+
+	/**
+	 * Constructor. La suma empieza en el total del diario.
+	 *
+	 * @param numeroSumado Valor que se suma en cada entrada en la
+	 * sección crítica.
+	 * @param diario Diario donde se anota cada incremento.
+	 */
+	public CargaDuradera(int numeroSumado, Diario diario) {
+
+		super(numeroSumado, diario.getTotal());
+		_diario = diario;
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * Suma y añade el registro al diario. El orden del diario es el
+	 * de las entradas en la sección crítica.
+	 */
+	@Override
+	public void seccionCritica() {
+
+		super.seccionCritica();
+		_ultimo.get()[0] = _diario.añade(_numeroSumado);
+
+	} // seccionCritica
+
+	/**
+	 * Espera a que el último registro de esta hebra esté en disco.
+	 */
+	@Override
+	public void confirma() {
+
+		_diario.espera(_ultimo.get()[0]);
+
+	} // confirma
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Crea una carga duradera si se ha pedido con la propiedad
+	 * cerrojos.diario (lo llama Cerrojo.creaCarga()). Todas las cargas
+	 * de un mismo fichero comparten su Diario, que se abre (y se
+	 * reproduce) la primera vez y no se cierra: cada carga sigue desde
+	 * el total de la anterior.
+	 *
+	 * @param numeroSumado Valor que se suma en cada operación.
+	 * @return Carga duradera, o null si no está la propiedad.
+	 * @throws UncheckedIOException Si no se puede abrir el diario.
+	 */
+	public static CargaDuradera dePropiedades(int numeroSumado) {
+
+		String fichero = System.getProperty(PROPIEDAD);
+		if (fichero == null)
+			return null;
+		Diario diario;
+		synchronized (_diarios) {
+			diario = _diarios.get(fichero);
+			if (diario == null) {
+				try {
+					diario = new Diario(Paths.get(fichero), TimeUnit.MICROSECONDS.toNanos(
+					                        Long.getLong(PROPIEDAD_INTERVALO, 0)),
+					                    Integer.getInteger(PROPIEDAD_LOTE, 64));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				_diarios.put(fichero, diario);
+			}
+		}
+		return new CargaDuradera(numeroSumado, diario);
+
+	} // dePropiedades
+
+	/**
+	 * Programa principal.
+	 *
+	 * @param args Ver el comentario de la clase.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+
+		if ((args.length > 0) && args[0].equals("--hijo")) {
+			hijo(Paths.get(args[1]));
+			return;
+		}
+
+		String nombre = "mcs";
+		int numHebras = 4;
+		long veces = 500;
+		Path directorio = null;
+		String configuraciones = "1:0,8:0,64:0,64:200,256:1000";
+		int segundosCaida = 0;
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-p": nombre = args[++i]; break;
+			case "-h": numHebras = Integer.parseInt(args[++i]); break;
+			case "-v": veces = Long.parseLong(args[++i]); break;
+			case "-d": directorio = Paths.get(args[++i]); break;
+			case "-c": configuraciones = args[++i]; break;
+			case "--caida": segundosCaida = Integer.parseInt(args[++i]); break;
+			default:
+				throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+			}
+		}
+		if (directorio == null)
+			directorio = Paths.get(System.getProperty("java.io.tmpdir"));
+		long limite = TimeUnit.MINUTES.toNanos(10);
+
+		System.out.printf("%-8s %8s %12s %8s %10s %14s  %s%n", "Lote", "µs", "ops/s",
+		                  "fsyncs", "incr/fsync", "µs fsync/incr", "Reproducción");
+		for (String configuracion : configuraciones.split(",")) {
+			String[] campos = configuracion.split(":");
+			int maxLote = Integer.parseInt(campos[0]);
+			long micros = Long.parseLong(campos[1]);
+			Path fichero = Files.createTempFile(directorio, "diario", ".log");
+			try {
+				Diario diario = new Diario(fichero, TimeUnit.MICROSECONDS.toNanos(micros),
+				                           maxLote);
+				CargaDuradera carga = new CargaDuradera(10, diario);
+				long nanos;
+				try {
+					Cerrojo cerrojo = Cerrojos.crea(nombre, numHebras);
+					nanos = Motor.ejecuta(cerrojo, carga, numHebras, veces, limite);
+				} finally {
+					diario.close();
+				}
+				if (nanos < 0) {
+					System.out.printf("%-8d %8d %12s%n", maxLote, micros, "BLOQUEADO");
+					continue;
+				}
+				long fsyncs = diario.getFsyncs();
+				long incrementos = numHebras * veces;
+
+				Diario reabierto = new Diario(fichero, 0, 1);
+				reabierto.close();
+				boolean coincide = (reabierto.getRecuperado() == carga.getSuma())
+				                   && (reabierto.getRegistrosRecuperados() == incrementos);
+				System.out.println(String.format(Locale.ROOT,
+				        "%-8d %8d %12.1f %8d %10.1f %14.2f  %s", maxLote, micros,
+				        incrementos * 1e9 / nanos, fsyncs, (double) incrementos / fsyncs,
+				        diario.getNanosEscribiendo() / 1e3 / incrementos,
+				        reabierto.getRecuperado() + (coincide ? " ok" : "")));
+				if (!coincide)
+					System.out.println("¡¡¡NO COINCIDEN!!!");
+			} finally {
+				Files.deleteIfExists(fichero);
+			}
+		}
+
+		if (segundosCaida > 0)
+			caida(directorio, segundosCaida);
+
+	} // main
+
+	/**
+	 * Proceso hijo de la prueba de caída: abre el diario (que puede
+	 * venir de una hija anterior), suma de uno en uno en una sola
+	 * hebra y escribe el total después de cada confirmación.
+	 */
+	static void hijo(Path fichero) throws IOException {
+
+		Diario diario = new Diario(fichero, TimeUnit.MICROSECONDS.toNanos(100), 64);
+		CargaDuradera carga = new CargaDuradera(1, diario);
+		while (true) {
+			carga.seccionCritica();
+			carga.confirma();
+			System.out.println(carga.getSuma());
+		}
+
+	} // hijo
+
+	/**
+	 * Prueba de caída: lanza dos hijas seguidas sobre el mismo diario,
+	 * matando cada una a los segundos dados. Tras cada una, el diario
+	 * tiene que tener al menos el último total que escribió, y la
+	 * segunda tiene que empezar justo después de lo reproducido.
+	 */
+	static void caida(Path directorio, int segundos) throws Exception {
+
+		Path fichero = Files.createTempFile(directorio, "diario", ".log");
+		try {
+			long reproducido = 0;
+			for (int i = 0; i < 2; ++i) {
+				long[] totales = ejecutaHija(fichero, segundos);
+				boolean sigue = (totales[0] == reproducido + 1);
+				Diario diario = new Diario(fichero, 0, 1);
+				diario.close();
+				boolean completo = (diario.getRecuperado() >= totales[1]);
+				System.out.println("Caída " + (i + 1) + ": la hija empezó en " + totales[0]
+				                   + " (tras " + reproducido + ") y había confirmado "
+				                   + totales[1] + "; reproducido " + diario.getRecuperado());
+				if (!sigue || !completo)
+					System.out.println("¡¡¡NO COINCIDEN!!!");
+				reproducido = diario.getRecuperado();
+			}
+		} finally {
+			Files.deleteIfExists(fichero);
+		}
+
+	} // caida
+
+	/**
+	 * Lanza una hija sobre el diario y la mata a los segundos dados.
+	 *
+	 * @return Primer y último total que escribió (confirmados).
+	 */
+	static long[] ejecutaHija(Path fichero, int segundos) throws Exception {
+
+		Process hija = Lanzador.lanza(CargaDuradera.class, ProcessBuilder.Redirect.PIPE,
+		                              "--hijo", fichero.toString());
+		final long[] totales = { -1, -1 };
+		Thread lectora = new Thread(() -> {
+			try (BufferedReader salida = new BufferedReader(
+			                     new InputStreamReader(hija.getInputStream()))) {
+				String linea;
+				while ((linea = salida.readLine()) != null) {
+					long total = Long.parseLong(linea.trim());
+					if (totales[0] < 0)
+						totales[0] = total;
+					totales[1] = total;
+				}
+			} catch (IOException | NumberFormatException e) {
+				// La hija ha muerto a mitad de línea.
+			}
+		});
+		lectora.start();
+		Thread.sleep(TimeUnit.SECONDS.toMillis(segundos));
+		hija.destroyForcibly().waitFor();
+		lectora.join();
+		return totales;
+
+	} // ejecutaHija
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Diarios abiertos por dePropiedades(), por fichero.
+	 */
+	private static final Map<String, Diario> _diarios = new HashMap<String, Diario>();
+
+	private final Diario _diario;
+
+	/**
+	 * Número de secuencia del último registro de cada hebra.
+	 */
+	private final ThreadLocal<long[]> _ultimo = ThreadLocal.withInitial(() -> new long[1]);
+
+} // CargaDuradera
@@ -0,0 +1,401 @@
+package persistencia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Diario (log) de sólo añadir, con confirmación en grupo ("group
+ * commit"), para que los incrementos de un contador sobrevivan a que
+ * el proceso muera.
+ *
+ * Cada incremento es un registro de 16 bytes: el valor y el valor
+ * con XOR de MAGIA, para reconocer un registro a medio escribir (o
+ * los ceros de un fichero que se alargó pero no llegó a escribirse).
+ * Al abrir el diario se reproduce: se suman los registros válidos
+ * desde el principio, y se trunca el fichero en el primero que no lo
+ * sea.
+ *
+ * añade() sólo apunta el registro en memoria, y devuelve su número
+ * de secuencia. Una hebra aparte (la "escritora") los escribe y hace
+ * force() (fsync) de varios en cada vez: espera a tener maxLote
+ * registros o a que el más antiguo lleve intervalo nanosegundos
+ * esperando, lo que pase antes. Mientras hace un fsync se van
+ * acumulando los siguientes, así que con muchas hebras los lotes se
+ * forman solos. espera() vuelve cuando el registro dado (y todos los
+ * anteriores, porque se escriben en orden) ya está en disco; sólo
+ * entonces se puede dar por hecho el incremento. Con maxLote 1 cada
+ * registro tiene su propio fsync.
+ */
+public class Diario implements AutoCloseable {
+
+	/**
+	 * Tamaño de un registro en bytes.
+	 */
+	public static final int REGISTRO = 16;
+
+	/**
+	 * Constructor. Abre (o crea) el diario y lo reproduce.
+	 *
+	 * @param fichero Fichero del diario.
+	 * @param intervaloNanos Tiempo máximo que espera la escritora a
+	 * que se junten más registros antes de hacer fsync.
+	 * @param maxLote Número máximo de registros por fsync.
+	 * @throws IOException
+	 * @throws IllegalArgumentException Si maxLote es menor que 1 o el
+	 * intervalo es negativo.
+	 */
+	public Diario(Path fichero, long intervaloNanos, int maxLote) throws IOException {
+
+		if (maxLote < 1)
+			throw new IllegalArgumentException("maxLote tiene que ser al menos 1: " + maxLote);
+		if (intervaloNanos < 0)
+			throw new IllegalArgumentException("Intervalo negativo: " + intervaloNanos);
+		_intervaloNanos = intervaloNanos;
+		_maxLote = maxLote;
+		_canal = FileChannel.open(fichero, StandardOpenOption.CREATE,
+		                          StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			reproduce();
+			// El fichero (y su tamaño) tienen que estar en disco antes
+			// de confirmar nada.
+			_canal.force(true);
+		} catch (IOException | RuntimeException e) {
+			_canal.close();
+			throw e;
+		}
+		_total = _recuperado;
+		_escritora = new Thread(this::escribe, "Diario");
+		_escritora.setDaemon(true);
+		_escritora.start();
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * Añade un registro. Lo normal es llamarlo dentro de la sección
+	 * crítica que hace el incremento, para que el orden del diario
+	 * sea el de los incrementos.
+	 *
+	 * @param valor Valor sumado.
+	 * @return Número de secuencia del registro (desde 1, contando sólo
+	 * los añadidos desde que se abrió).
+	 * @throws UncheckedIOException Si la escritora no ha podido
+	 * escribir (ya no se escribirá nada más).
+	 */
+	public long añade(long valor) {
+
+		_cerrojo.lock();
+		try {
+			if (_error != null)
+				throw new UncheckedIOException(_error);
+			if (_cerrado)
+				throw new IllegalStateException("Diario cerrado");
+			if (_numPendientes == _pendientes.length)
+				_pendientes = Arrays.copyOf(_pendientes, 2 * _pendientes.length);
+			_pendientes[_numPendientes++] = valor;
+			_total += valor;
+			long sinTomar = ++_añadidos - _tomados;
+			if ((sinTomar == 1) || (sinTomar >= _maxLote))
+				_hayTrabajo.signal();
+			return _añadidos;
+		} finally {
+			_cerrojo.unlock();
+		}
+
+	} // añade
+
+	/**
+	 * Espera a que un registro esté en disco.
+	 *
+	 * @param secuencia Número de secuencia devuelto por añade().
+	 * @throws UncheckedIOException Si la escritora no ha podido
+	 * escribir.
+	 */
+	public void espera(long secuencia) {
+
+		_cerrojo.lock();
+		try {
+			while (_confirmados < secuencia) {
+				if (_error != null)
+					throw new UncheckedIOException(_error);
+				_confirmado.awaitUninterruptibly();
+			}
+		} finally {
+			_cerrojo.unlock();
+		}
+
+	} // espera
+
+	/**
+	 * Escribe lo que quede pendiente, para la escritora y cierra el
+	 * fichero.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+
+		_cerrojo.lock();
+		try {
+			_cerrado = true;
+			_hayTrabajo.signal();
+		} finally {
+			_cerrojo.unlock();
+		}
+		try {
+			_escritora.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		_canal.close();
+		if (_error != null)
+			throw _error;
+
+	} // close
+
+	/**
+	 * Suma de los registros que había en el diario al abrirlo.
+	 */
+	public long getRecuperado() {
+
+		return _recuperado;
+
+	} // getRecuperado
+
+	/**
+	 * Suma de todos los registros: los que había al abrirlo y los
+	 * añadidos después (estén ya en disco o no).
+	 */
+	public long getTotal() {
+
+		_cerrojo.lock();
+		try {
+			return _total;
+		} finally {
+			_cerrojo.unlock();
+		}
+
+	} // getTotal
+
+	/**
+	 * Número de registros que había en el diario al abrirlo.
+	 */
+	public long getRegistrosRecuperados() {
+
+		return _registrosRecuperados;
+
+	} // getRegistrosRecuperados
+
+	/**
+	 * Número de fsync hechos desde que se abrió.
+	 */
+	public long getFsyncs() {
+
+		_cerrojo.lock();
+		try {
+			return _fsyncs;
+		} finally {
+			_cerrojo.unlock();
+		}
+
+	} // getFsyncs
+
+	/**
+	 * Nanosegundos pasados en write() + fsync desde que se abrió.
+	 */
+	public long getNanosEscribiendo() {
+
+		_cerrojo.lock();
+		try {
+			return _nanosEscribiendo;
+		} finally {
+			_cerrojo.unlock();
+		}
+
+	} // getNanosEscribiendo
+
+	/**
+	 * Número de registros en disco desde que se abrió.
+	 */
+	public long getConfirmados() {
+
+		_cerrojo.lock();
+		try {
+			return _confirmados;
+		} finally {
+			_cerrojo.unlock();
+		}
+
+	} // getConfirmados
+
+	//-----------------------------------------------------
+	//                    Métodos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Lee el diario desde el principio, suma los registros válidos y
+	 * trunca lo que haya detrás. Deja el canal al final.
+	 */
+	private void reproduce() throws IOException {
+
+		ByteBuffer lectura = ByteBuffer.allocate(REGISTRO * 4096);
+		long posicion = 0;
+		boolean valido = true;
+		_canal.position(0);
+		while (valido && (_canal.read(lectura) > 0)) {
+			lectura.flip();
+			while (lectura.remaining() >= REGISTRO) {
+				long valor = lectura.getLong();
+				if (lectura.getLong() != (valor ^ MAGIA)) {
+					valido = false;
+					break;
+				}
+				_recuperado += valor;
+				++_registrosRecuperados;
+				posicion += REGISTRO;
+			}
+			lectura.compact();
+		}
+		if (_canal.size() > posicion)
+			_canal.truncate(posicion);
+		_canal.position(posicion);
+
+	} // reproduce
+
+	/**
+	 * Bucle de la escritora.
+	 */
+	private void escribe() {
+
+		ByteBuffer escritura = ByteBuffer.allocate(REGISTRO * _maxLote);
+		while (true) {
+			int n;
+			_cerrojo.lock();
+			try {
+				while (!_cerrado && (_añadidos == _tomados))
+					_hayTrabajo.awaitUninterruptibly();
+				long restante = _intervaloNanos;
+				while (!_cerrado && (_añadidos - _tomados < _maxLote) && (restante > 0))
+					try {
+						restante = _hayTrabajo.awaitNanos(restante);
+					} catch (InterruptedException e) {
+						// Sólo nos interrumpe quien no debe; seguimos.
+					}
+				n = (int) Math.min(_añadidos - _tomados, _maxLote);
+				if (n == 0)
+					return; // Cerrado y sin pendientes.
+				escritura.clear();
+				for (int i = 0; i < n; ++i) {
+					escritura.putLong(_pendientes[i]);
+					escritura.putLong(_pendientes[i] ^ MAGIA);
+				}
+				System.arraycopy(_pendientes, n, _pendientes, 0, _numPendientes - n);
+				_numPendientes -= n;
+				_tomados += n;
+			} finally {
+				_cerrojo.unlock();
+			}
+
+			// Fuera del cerrojo: mientras tanto se pueden seguir
+			// añadiendo registros.
+			IOException error = null;
+			long inicio = System.nanoTime();
+			try {
+				escritura.flip();
+				while (escritura.hasRemaining())
+					_canal.write(escritura);
+				_canal.force(false);
+			} catch (IOException e) {
+				error = e;
+			}
+			long nanos = System.nanoTime() - inicio;
+
+			_cerrojo.lock();
+			try {
+				if (error != null) {
+					_error = error;
+					_confirmado.signalAll();
+					return;
+				}
+				_confirmados += n;
+				++_fsyncs;
+				_nanosEscribiendo += nanos;
+				_confirmado.signalAll();
+			} finally {
+				_cerrojo.unlock();
+			}
+		}
+
+	} // escribe
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Se guarda con XOR en la segunda mitad de cada registro.
+	 */
+	private static final long MAGIA = 0x5DEECE66DCAFEBABL;
+
+	private final FileChannel _canal;
+
+	private final long _intervaloNanos;
+
+	private final int _maxLote;
+
+	private final Thread _escritora;
+
+	private long _recuperado = 0;
+
+	private long _registrosRecuperados = 0;
+
+	/**
+	 * Protege todo lo que sigue.
+	 */
+	private final ReentrantLock _cerrojo = new ReentrantLock();
+
+	/**
+	 * Avisa a la escritora de que hay registros nuevos (o de que se
+	 * cierra).
+	 */
+	private final Condition _hayTrabajo = _cerrojo.newCondition();
+
+	/**
+	 * Avisa a los que esperan de que ha avanzado _confirmados.
+	 */
+	private final Condition _confirmado = _cerrojo.newCondition();
+
+	/**
+	 * Registros añadidos que la escritora aún no ha tomado, en orden.
+	 */
+	private long[] _pendientes = new long[1024];
+
+	private int _numPendientes = 0;
+
+	/**
+	 * Registros añadidos, tomados por la escritora y confirmados (en
+	 * disco) desde que se abrió.
+	 */
+	private long _añadidos = 0, _tomados = 0, _confirmados = 0;
+
+	/**
+	 * Suma de los registros recuperados y añadidos.
+	 */
+	private long _total;
+
+	private long _fsyncs = 0;
+
+	private long _nanosEscribiendo = 0;
+
+	private boolean _cerrado = false;
+
+	private IOException _error = null;
+
+} // Diario
@@ -0,0 +1,274 @@
+package procesos;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contador compartido entre procesos, como el AtomicLong de
+ * p12.b.ExclusionMutuaAtomica pero en un fichero proyectado en
+ * memoria (ver Memoria), para sumar desde varias JVM a la vez.
+ *
+ * El contador está repartido en celdas, cada una en su propia línea,
+ * como un LongAdder: cada proceso suma en su celda con getAndAdd()
+ * sobre la memoria proyectada, que es una única instrucción atómica
+ * (en x86, "lock xadd") que siempre termina (sin esperas ni
+ * reintentos). Si cada proceso tiene su celda, no compiten por la
+ * misma línea de caché. El valor del contador es la suma de todas.
+ *
+ * La primera línea del fichero guarda el número de celdas, así que
+ * cualquier otro proceso puede abrirlo y leerlo (con abre(), que lo
+ * proyecta sólo para leer y basta con permiso de lectura) sin saber
+ * cómo se creó y sin parar a los que escriben. La suma que lee
+ * no es una foto instantánea (las celdas se leen una detrás de otra),
+ * pero si sólo se suman valores positivos nunca es mayor que el valor
+ * final ni menor que uno anterior.
+ *
+ * 	java procesos.ContadorCompartido [-n procesos] [-v veces]
+ * 	                                 [-c celdas] [-f fichero]
+ * 	java procesos.ContadorCompartido --monitor fichero [milisegundos]
+ *
+ * La primera forma lanza los procesos, cada uno suma NUMERO_SUMADO
+ * veces veces en la celda de su número de proceso, y mientras tanto
+ * muestra el total. Con -c 1 todos suman en la misma celda, para ver
+ * lo que cuesta compartirla. La segunda muestra el total y cada celda
+ * de un contador que ya exista, hasta que se pare con Ctrl-C.
+ */
+public class ContadorCompartido {
+
+	/**
+	 * Número que suma cada proceso en cada operación de prueba.
+	 */
+	public static final int NUMERO_SUMADO = 10000;
+
+	/**
+	 * Crea (o abre, si ya existe con el mismo número de celdas) un
+	 * contador.
+	 *
+	 * @param fichero Fichero compartido.
+	 * @param numCeldas Número de celdas.
+	 * @throws IOException
+	 */
+	public ContadorCompartido(Path fichero, int numCeldas) throws IOException {
+
+		_memoria = Memoria.proyecta(fichero, (long) (1 + numCeldas) * Memoria.LINEA);
+		long anterior = (long) Memoria.LONG.compareAndExchange(_memoria, NUM_CELDAS, 0L,
+		                                                       (long) numCeldas);
+		if ((anterior != 0) && (anterior != numCeldas))
+			throw new IllegalStateException(fichero + " tiene " + anterior + " celdas, no "
+			                                + numCeldas);
+		_numCeldas = numCeldas;
+
+	} // constructor
+
+	/**
+	 * Constructor sobre una proyección ya hecha.
+	 */
+	private ContadorCompartido(ByteBuffer memoria, int numCeldas) {
+
+		_memoria = memoria;
+		_numCeldas = numCeldas;
+
+	} // constructor
+
+	/**
+	 * Abre, sólo para leer, un contador que ya existe, con su número
+	 * de celdas. getAndAdd() lanza UnsupportedOperationException.
+	 *
+	 * @param fichero Fichero compartido.
+	 * @return Contador de sólo lectura.
+	 * @throws IOException
+	 */
+	public static ContadorCompartido abre(Path fichero) throws IOException {
+
+		ByteBuffer cabecera = Memoria.proyectaLectura(fichero, Memoria.LINEA);
+		long numCeldas = (long) Memoria.LONG.getVolatile(cabecera, NUM_CELDAS);
+		if (numCeldas <= 0)
+			throw new IllegalStateException(fichero + " no es un contador compartido");
+		return new ContadorCompartido(Memoria.proyectaLectura(fichero,
+		                                  (1 + numCeldas) * Memoria.LINEA), (int) numCeldas);
+
+	} // abre
+
+	//-----------------------------------------------------
+
+	/**
+	 * Suma un valor en una celda.
+	 *
+	 * @param celda Celda (se usa celda % getNumCeldas()). Lo normal
+	 * es que cada proceso use su número de proceso.
+	 * @param valor Valor a sumar.
+	 * @return Valor de la celda antes de sumar.
+	 */
+	public long getAndAdd(int celda, long valor) {
+
+		return (long) Memoria.LONG.getAndAdd(_memoria, posicion(celda % _numCeldas), valor);
+
+	} // getAndAdd
+
+	/**
+	 * Devuelve el valor del contador: la suma de todas las celdas.
+	 *
+	 * @return Valor del contador.
+	 */
+	public long getSuma() {
+
+		long suma = 0;
+		for (int i = 0; i < _numCeldas; ++i)
+			suma += getCelda(i);
+		return suma;
+
+	} // getSuma
+
+	/**
+	 * Devuelve el valor de una celda.
+	 *
+	 * @param celda Número de celda.
+	 * @return Valor de la celda.
+	 */
+	public long getCelda(int celda) {
+
+		return (long) Memoria.LONG.getVolatile(_memoria, posicion(celda));
+
+	} // getCelda
+
+	public int getNumCeldas() {
+
+		return _numCeldas;
+
+	} // getNumCeldas
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Prueba y monitor (ver el comentario de la clase).
+	 *
+	 * @param args Opciones.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+
+		if ((args.length > 0) && args[0].equals("--hijo")) {
+			// Proceso que suma: fichero, celdas, número de proceso, veces.
+			ContadorCompartido contador = new ContadorCompartido(Paths.get(args[1]),
+			                                                     Integer.parseInt(args[2]));
+			int numProceso = Integer.parseInt(args[3]);
+			long veces = Long.parseLong(args[4]);
+			long inicio = System.nanoTime();
+			for (long i = 0; i < veces; ++i)
+				contador.getAndAdd(numProceso, NUMERO_SUMADO);
+			System.out.println(System.nanoTime() - inicio);
+			return;
+		}
+		if ((args.length > 1) && args[0].equals("--monitor")) {
+			ContadorCompartido contador = abre(Paths.get(args[1]));
+			long espera = (args.length > 2) ? Long.parseLong(args[2]) : 1000;
+			while (true) {
+				StringBuilder linea = new StringBuilder("" + contador.getSuma());
+				linea.append(" =");
+				for (int i = 0; i < contador.getNumCeldas(); ++i)
+					linea.append(" " + contador.getCelda(i));
+				System.out.println(linea);
+				Thread.sleep(espera);
+			}
+		}
+
+		int numProcesos = 2;
+		long veces = 1000000;
+		int numCeldas = -1;
+		Path fichero = null;
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-n": numProcesos = Integer.parseInt(args[++i]); break;
+			case "-v": veces = Long.parseLong(args[++i]); break;
+			case "-c": numCeldas = Integer.parseInt(args[++i]); break;
+			case "-f": fichero = Paths.get(args[++i]); break;
+			default:
+				throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+			}
+		}
+		if (numCeldas <= 0)
+			numCeldas = numProcesos;
+		boolean temporal = (fichero == null);
+		if (temporal)
+			fichero = Files.createTempFile("contador", ".mem");
+		else
+			Files.deleteIfExists(fichero);
+
+		try {
+			ContadorCompartido contador = new ContadorCompartido(fichero, numCeldas);
+			List<Process> hijos = new ArrayList<Process>();
+			for (int i = 0; i < numProcesos; ++i)
+				hijos.add(Lanzador.lanza(ContadorCompartido.class, ProcessBuilder.Redirect.PIPE,
+				                         "--hijo", fichero.toString(), "" + numCeldas,
+				                         "" + i, "" + veces));
+
+			// Monitor: los hijos no se paran para que leamos.
+			boolean vivos = true;
+			while (vivos) {
+				vivos = false;
+				for (Process p : hijos)
+					vivos |= p.isAlive();
+				System.out.println("Total: " + contador.getSuma());
+				if (vivos)
+					hijos.get(0).waitFor(100, TimeUnit.MILLISECONDS);
+			}
+
+			long maxNanos = 0;
+			for (Process p : hijos) {
+				BufferedReader salida = new BufferedReader(new InputStreamReader(p.getInputStream()));
+				String linea = salida.readLine();
+				if ((p.exitValue() != 0) || (linea == null))
+					throw new IllegalStateException("Un proceso hijo ha fallado: " + linea);
+				maxNanos = Math.max(maxNanos, Long.parseLong(linea.trim()));
+			}
+
+			long resultadoEsperado = (long) NUMERO_SUMADO * veces * numProcesos;
+			System.out.println("El resultado final es " + contador.getSuma());
+			System.out.println("Esperábamos " + resultadoEsperado);
+			System.out.println(String.format(Locale.ROOT,
+			        "%d procesos, %d celdas: %.1f ops/s, %.1f ns/op por proceso",
+			        numProcesos, numCeldas, numProcesos * veces * 1e9 / maxNanos,
+			        (double) maxNanos / veces));
+			if (contador.getSuma() != resultadoEsperado)
+				System.out.println("¡¡¡NO COINCIDEN!!!");
+		} finally {
+			if (temporal)
+				Files.deleteIfExists(fichero);
+		}
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Posición del número de celdas.
+	 */
+	private static final int NUM_CELDAS = 0;
+
+	/**
+	 * Posición de una celda.
+	 */
+	private static int posicion(int celda) {
+
+		return Memoria.linea(Memoria.LINEA, celda);
+
+	} // posicion
+
+	private final ByteBuffer _memoria;
+
+	private final int _numCeldas;
+
+} // ContadorCompartido
@@ -0,0 +1,284 @@
+package procesos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import cerrojos.Cerrojo;
+
+/**
+ * Lanzador de pruebas entre procesos: arranca varias JVM que se
+ * reparten un fichero proyectado en memoria, y cada una incrementa
+ * muchas veces un contador del fichero (el "recurso compartido"),
+ * sin operaciones atómicas, dentro de la sección crítica.
+ *
+ * Protocolos:
+ *
+ * 	- peterson: PetersonCompartido (siempre dos procesos).
+ * 	- panaderia: PanaderiaCompartida.
+ * 	- filelock: FileChannel.lock() sobre la posición del contador,
+ * 	  que es un cerrojo del sistema operativo (fcntl en Linux): una
+ * 	  llamada al sistema para cogerlo y otra para soltarlo.
+ *
+ * Todos los procesos esperan a que estén todos antes de empezar (con
+ * un contador en el propio fichero). Cada uno anota lo que ha
+ * tardado, y el padre comprueba que el contador vale procesos *
+ * veces y calcula la productividad con el más lento. Si no terminan
+ * en el tiempo límite, se matan y se informa como BLOQUEADO.
+ *
+ * 	java procesos.Lanzador [-p peterson,panaderia,filelock]
+ * 	                       [-n procesos] [-v vecesPorProceso]
+ * 	                       [-t segundosLimite] [-f fichero]
+ *
+ * El fichero de -f tiene que no existir o estar vacío: se rehace
+ * (se borra y se vuelve a crear) para cada protocolo, y se queda al
+ * terminar. Sin -f se usa uno temporal.
+ *
+ * Con más procesos que núcleos, los protocolos con espera activa
+ * necesitan que el planificador les dé la CPU para avanzar, y van
+ * muchísimo más lentos que filelock, que duerme al proceso.
+ */
+public class Lanzador {
+
+	/**
+	 * Máximo número de procesos.
+	 */
+	public static final int MAX_PROCESOS = 64;
+
+	//-----------------------------------------------------
+	//                    Proceso hijo
+	//-----------------------------------------------------
+
+	/**
+	 * Lo que hace cada proceso hijo.
+	 */
+	static void hijo(String protocolo, Path fichero, int numProceso, int numProcesos,
+	                 long veces) throws Exception {
+
+		ByteBuffer memoria = Memoria.proyecta(fichero, TAMAÑO);
+		Cerrojo cerrojo = null;
+		FileChannel canal = null;
+		switch (protocolo) {
+		case "peterson": cerrojo = new PetersonCompartido(memoria, CERROJO); break;
+		case "panaderia": cerrojo = new PanaderiaCompartida(memoria, CERROJO, numProcesos); break;
+		case "filelock":
+			canal = FileChannel.open(fichero, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			break;
+		default:
+			throw new IllegalArgumentException("Protocolo desconocido: " + protocolo);
+		}
+
+		// Salida a la vez.
+		Memoria.LONG.getAndAdd(memoria, LISTOS, 1L);
+		while ((long) Memoria.LONG.getVolatile(memoria, LISTOS) < numProcesos)
+			Thread.yield();
+
+		long inicio = System.nanoTime();
+		for (long i = 0; i < veces; ++i) {
+			FileLock bloqueo = null;
+			if (cerrojo != null)
+				cerrojo.entradaSeccionCritica(numProceso);
+			else
+				bloqueo = canal.lock(RECURSO, 8, false);
+				long valor = (long) Memoria.LONG.get(memoria, RECURSO);
+				Memoria.LONG.set(memoria, RECURSO, valor + 1);
+			if (cerrojo != null)
+				cerrojo.salidaSeccionCritica(numProceso);
+			else
+				bloqueo.release();
+		}
+		Memoria.LONG.setVolatile(memoria, nanos(numProceso), System.nanoTime() - inicio);
+		if (canal != null)
+			canal.close();
+
+	} // hijo
+
+	//-----------------------------------------------------
+	//                    Proceso padre
+	//-----------------------------------------------------
+
+	/**
+	 * Ejecuta un protocolo con varios procesos hijos y escribe su
+	 * fila de resultados.
+	 */
+	static void ejecuta(String protocolo, int numProcesos, long veces, Path fichero,
+	                    int segundosLimite) throws Exception {
+
+		Files.deleteIfExists(fichero);
+		ByteBuffer memoria = Memoria.proyecta(fichero, TAMAÑO);
+
+		List<Process> hijos = new ArrayList<Process>();
+		for (int i = 0; i < numProcesos; ++i)
+			hijos.add(lanza(Lanzador.class, ProcessBuilder.Redirect.INHERIT, "--hijo",
+			                protocolo, fichero.toString(), "" + i, "" + numProcesos,
+			                "" + veces));
+
+		long fin = System.nanoTime() + TimeUnit.SECONDS.toNanos(segundosLimite);
+		boolean terminados = true, correctos = true;
+		for (Process p : hijos) {
+			long restante = fin - System.nanoTime();
+			if ((restante <= 0) || !p.waitFor(restante, TimeUnit.NANOSECONDS)) {
+				terminados = false;
+				break;
+			}
+			correctos &= p.exitValue() == 0;
+		}
+		if (!terminados) {
+			for (Process p : hijos)
+				p.destroyForcibly();
+			imprimeFila(protocolo, numProcesos, -1, -1, "BLOQUEADO");
+			return;
+		}
+		if (!correctos) {
+			imprimeFila(protocolo, numProcesos, -1, -1, "ERROR");
+			return;
+		}
+
+		long maxNanos = 0;
+		for (int i = 0; i < numProcesos; ++i)
+			maxNanos = Math.max(maxNanos, (long) Memoria.LONG.getVolatile(memoria, nanos(i)));
+		long total = numProcesos * veces;
+		long recurso = (long) Memoria.LONG.getVolatile(memoria, RECURSO);
+		imprimeFila(protocolo, numProcesos, total * 1e9 / maxNanos, (double) maxNanos / total,
+		            (recurso == total) ? "ok" : "¡CARRERA! (" + recurso + " de " + total + ")");
+
+	} // ejecuta
+
+	/**
+	 * Arranca el main() de una clase en una JVM hija con la misma
+	 * classpath, sin esperar a que termine.
+	 *
+	 * @param principal Clase con el main().
+	 * @param salida Adónde va la salida (y los errores) de la hija.
+	 * @param args Parámetros del main().
+	 * @return Proceso hijo.
+	 * @throws IOException
+	 */
+	public static Process lanza(Class<?> principal, ProcessBuilder.Redirect salida,
+	                            String... args) throws IOException {
+
+		List<String> comando = new ArrayList<String>();
+		comando.add(System.getProperty("java.home") + File.separator + "bin"
+		            + File.separator + "java");
+		comando.add("-cp");
+		comando.add(System.getProperty("java.class.path"));
+		comando.add(principal.getName());
+		comando.addAll(Arrays.asList(args));
+		return new ProcessBuilder(comando).redirectErrorStream(true)
+		                                  .redirectOutput(salida).start();
+
+	} // lanza
+
+	static void imprimeFila(String protocolo, int numProcesos, double opsPorSegundo,
+	                        double nanosPorOp, String estado) {
+
+		if (opsPorSegundo < 0)
+			System.out.printf("%-12s %8d %14s %10s  %s%n", protocolo, numProcesos, "-", "-", estado);
+		else
+			System.out.printf(Locale.ROOT, "%-12s %8d %14.1f %10.1f  %s%n", protocolo,
+			                  numProcesos, opsPorSegundo, nanosPorOp, estado);
+
+	} // imprimeFila
+
+	//-----------------------------------------------------
+	//                    Métodos estáticos
+	//-----------------------------------------------------
+
+	/**
+	 * Programa principal.
+	 *
+	 * @param args Ver el comentario de la clase.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+
+		if ((args.length > 0) && args[0].equals("--hijo")) {
+			hijo(args[1], Paths.get(args[2]), Integer.parseInt(args[3]),
+			     Integer.parseInt(args[4]), Long.parseLong(args[5]));
+			return;
+		}
+
+		String[] protocolos = { "peterson", "panaderia", "filelock" };
+		int numProcesos = 2;
+		long veces = 100000;
+		int segundosLimite = 60;
+		Path fichero = null;
+
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-p": protocolos = args[++i].split(","); break;
+			case "-n": numProcesos = Integer.parseInt(args[++i]); break;
+			case "-v": veces = Long.parseLong(args[++i]); break;
+			case "-t": segundosLimite = Integer.parseInt(args[++i]); break;
+			case "-f": fichero = Paths.get(args[++i]); break;
+			default:
+				throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+			}
+		}
+		if ((numProcesos < 1) || (numProcesos > MAX_PROCESOS))
+			throw new IllegalArgumentException("Entre 1 y " + MAX_PROCESOS + " procesos");
+		boolean temporal = (fichero == null);
+		if (temporal)
+			fichero = Files.createTempFile("cerrojos", ".mem");
+		else if (Files.exists(fichero) && (Files.size(fichero) > 0))
+			throw new IllegalArgumentException(fichero + " ya existe y no está vacío");
+
+		System.out.printf("%-12s %8s %14s %10s  %s%n", "Protocolo", "Procesos", "ops/s",
+		                  "ns/op", "Estado");
+		try {
+			for (String protocolo : protocolos)
+				ejecuta(protocolo, protocolo.equals("peterson") ? 2 : numProcesos, veces,
+				        fichero, segundosLimite);
+		} finally {
+			if (temporal)
+				Files.deleteIfExists(fichero);
+		}
+
+	} // main
+
+	//-----------------------------------------------------
+	//                    Atributos privados
+	//-----------------------------------------------------
+
+	/**
+	 * Posición del número de procesos preparados.
+	 */
+	private static final int LISTOS = 0;
+
+	/**
+	 * Posición del contador que se incrementa en la sección crítica.
+	 */
+	private static final int RECURSO = Memoria.LINEA;
+
+	/**
+	 * Posición del estado del cerrojo.
+	 */
+	private static final int CERROJO = (2 + MAX_PROCESOS) * Memoria.LINEA;
+
+	/**
+	 * Tamaño del fichero: cabecera y el mayor de los cerrojos.
+	 */
+	private static final int TAMAÑO = CERROJO + Math.max(PetersonCompartido.BYTES,
+	                                  PanaderiaCompartida.bytes(MAX_PROCESOS));
+
+	/**
+	 * Posición de los nanosegundos que ha tardado un proceso.
+	 */
+	private static int nanos(int numProceso) {
+
+		return Memoria.linea(2 * Memoria.LINEA, numProceso);
+
+	} // nanos
+
+} // Lanzador
@@ -0,0 +1,95 @@
+package procesos;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memoria compartida entre procesos: un fichero proyectado en memoria
+ * (MappedByteBuffer) con MAP_SHARED, que todas las JVM que lo
+ * proyectan ven como la misma memoria física.
+ *
+ * Los accesos se hacen con el VarHandle LONG, que ve el buffer como
+ * un long[] indexado por posición en bytes. Sobre un buffer directo,
+ * y con posiciones múltiplo de 8, admite los mismos modos que un
+ * atributo (volátil, adquisición/liberación, opaco, compareAndSet,
+ * getAndAdd), y las barreras de VarHandle son instrucciones del
+ * procesador, así que ordenan también respecto a los otros procesos.
+ *
+ * Cada valor compartido va en su propia "línea" de LINEA bytes, como
+ * el relleno de cerrojos.Anderson.
+ */
+public class Memoria {
+
+	/**
+	 * Separación entre valores: 128 bytes, dos líneas de caché.
+	 */
+	public static final int LINEA = 128;
+
+	/**
+	 * Acceso a un long del buffer, por posición en bytes.
+	 */
+	public static final VarHandle LONG =
+	        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	/**
+	 * Proyecta en memoria los primeros bytes de un fichero, creándolo
+	 * (y alargándolo con ceros) si hace falta. La proyección sigue
+	 * siendo válida después de cerrar el canal.
+	 *
+	 * @param fichero Fichero compartido.
+	 * @param bytes Tamaño de la proyección.
+	 * @return Buffer proyectado.
+	 * @throws IOException
+	 */
+	public static MappedByteBuffer proyecta(Path fichero, long bytes) throws IOException {
+
+		try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.CREATE,
+		                                          StandardOpenOption.READ,
+		                                          StandardOpenOption.WRITE)) {
+			return canal.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		}
+
+	} // proyecta
+
+	/**
+	 * Proyecta en memoria, sólo para leer, los primeros bytes de un
+	 * fichero que ya existe. Basta con permiso de lectura. El buffer
+	 * sólo admite los modos de lectura de LONG (get, getVolatile...).
+	 *
+	 * @param fichero Fichero compartido.
+	 * @param bytes Tamaño de la proyección.
+	 * @return Buffer proyectado, de sólo lectura.
+	 * @throws IOException Si no se puede abrir, o es más corto que
+	 * bytes.
+	 */
+	public static MappedByteBuffer proyectaLectura(Path fichero, long bytes) throws IOException {
+
+		try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+			if (canal.size() < bytes)
+				throw new IOException(fichero + " tiene " + canal.size() + " bytes, no "
+				                      + bytes);
+			return canal.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+		}
+
+	} // proyectaLectura
+
+	/**
+	 * Posición en bytes de la línea i a partir de una base.
+	 *
+	 * @param base Posición de la primera línea.
+	 * @param i Número de línea.
+	 * @return base + i * LINEA.
+	 */
+	public static int linea(int base, int i) {
+
+		return base + i * LINEA;
+
+	} // linea
+
+} // Memoria
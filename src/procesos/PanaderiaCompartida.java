@@ -0,0 +1,163 @@
+package procesos;
+
+import java.nio.ByteBuffer;
+
+import cerrojos.Cerrojo;
+
+/**
+ * Panadería "blanca y negra" (cerrojos.Panaderia) entre N procesos,
+ * con los flags, números y colores en memoria compartida (ver
+ * Memoria).
+ *
+ * El "número de hebra" es el número de proceso. Como en
+ * cerrojos.Panaderia, todos los accesos son volátiles: el algoritmo
+ * cuenta con que todas las escrituras se vean en el mismo orden. Los
+ * números siguen acotados por N, aunque los procesos duren mucho.
+ *
+ * Ocupa bytes(numProcesos) bytes a partir de la posición base, que
+ * debe ser múltiplo de 8. El fichero recién creado está a ceros, que
+ * es el estado inicial.
+ *
+ * 	java procesos.Lanzador -p panaderia,filelock -n 4
+ */
+public class PanaderiaCompartida implements Cerrojo {
+
+	/**
+	 * Bytes que ocupa el estado: el color global y, por proceso,
+	 * eligiendo, número y color.
+	 *
+	 * @param numProcesos Número de procesos.
+	 * @return Tamaño en bytes.
+	 */
+	public static int bytes(int numProcesos) {
+
+		return (1 + 3 * numProcesos) * Memoria.LINEA;
+
+	} // bytes
+
+	/**
+	 * Constructor.
+	 *
+	 * @param memoria Memoria compartida.
+	 * @param base Posición del estado en la memoria.
+	 * @param numProcesos Número de procesos (numerados desde 0) que
+	 * usarán el cerrojo.
+	 */
+	public PanaderiaCompartida(ByteBuffer memoria, int base, int numProcesos) {
+
+		_memoria = memoria;
+		_base = base;
+		_numProcesos = numProcesos;
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de proceso (de 0 a numProcesos - 1) que
+	 * quiere entrar en la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		// Cogemos color y número.
+		escribe(eligiendo(numHebra), 1);
+		long miColor = lee(COLOR_GLOBAL);
+		escribe(color(numHebra), miColor);
+		long max = 0;
+		for (int j = 0; j < _numProcesos; ++j)
+			if (lee(color(j)) == miColor)
+				max = Math.max(max, lee(numero(j)));
+		long miNumero = max + 1;
+		escribe(numero(numHebra), miNumero);
+		escribe(eligiendo(numHebra), 0);
+
+		// Esperamos nuestro turno.
+		for (int j = 0; j < _numProcesos; ++j) {
+			if (j == numHebra)
+				continue;
+			while (lee(eligiendo(j)) != 0)
+				; // Espera activa
+			while (true) {
+				long suNumero = lee(numero(j));
+				if (suNumero == 0)
+					break;
+				if (lee(color(j)) == miColor) {
+					// Misma tanda: pasa antes el número menor (y, si
+					// empatan, el proceso menor).
+					if ((suNumero > miNumero) || ((suNumero == miNumero) && (j > numHebra)))
+						break;
+				}
+				else {
+					// Otra tanda: si el color global ya no es el nuestro,
+					// la nuestra es la anterior y vamos primero.
+					if (lee(COLOR_GLOBAL) != miColor)
+						break;
+				}
+			}
+		}
+
+		// ¡Está libre!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que el proceso abandona la sección
+	 * crítica. Cambia el color global al contrario del suyo, cerrando
+	 * su tanda.
+	 *
+	 * @param numHebra Número de proceso que abandona la sección
+	 * crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		escribe(COLOR_GLOBAL, 1 - lee(color(numHebra)));
+		escribe(numero(numHebra), 0);
+
+	} // salidaSeccionCritica
+
+	public int maxHebras() {
+
+		return _numProcesos;
+
+	} // maxHebras
+
+	//-----------------------------------------------------
+	//                    Métodos privados
+	//-----------------------------------------------------
+
+	private long lee(int linea) {
+
+		return (long) Memoria.LONG.getVolatile(_memoria, Memoria.linea(_base, linea));
+
+	} // lee
+
+	private void escribe(int linea, long valor) {
+
+		Memoria.LONG.setVolatile(_memoria, Memoria.linea(_base, linea), valor);
+
+	} // escribe
+
+	private static int eligiendo(int i) { return 1 + 3 * i; }
+
+	private static int numero(int i) { return 2 + 3 * i; }
+
+	private static int color(int i) { return 3 + 3 * i; }
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	/**
+	 * Línea del color global (0 o 1).
+	 */
+	protected static final int COLOR_GLOBAL = 0;
+
+	protected final ByteBuffer _memoria;
+
+	protected final int _base;
+
+	protected final int _numProcesos;
+
+} // PanaderiaCompartida
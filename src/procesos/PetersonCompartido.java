@@ -0,0 +1,99 @@
+package procesos;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+
+import cerrojos.Cerrojo;
+
+/**
+ * Algoritmo de Peterson (p08.Peterson) entre dos procesos, con los
+ * flags y el turno en memoria compartida (ver Memoria).
+ *
+ * El "número de hebra" es el número de proceso, 0 o 1. El orden de
+ * memoria es el de cerrojos.PetersonBarreras con adqlib: flag con
+ * liberación, turno con getAndSet (para que las escrituras del turno
+ * de los dos procesos se sincronicen; ver cerrojos.Barreras), una
+ * barrera completa antes de mirar al otro, lecturas con adquisición y
+ * salida con liberación. Ni la entrada ni la salida hacen llamadas al
+ * sistema.
+ *
+ * Ocupa BYTES bytes a partir de la posición base, que debe ser
+ * múltiplo de 8. El fichero recién creado está a ceros, que es el
+ * estado inicial (nadie quiere entrar).
+ *
+ * 	java procesos.Lanzador -p peterson,filelock
+ */
+public class PetersonCompartido implements Cerrojo {
+
+	/**
+	 * Bytes que ocupa el estado: dos flags y el turno.
+	 */
+	public static final int BYTES = 3 * Memoria.LINEA;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param memoria Memoria compartida.
+	 * @param base Posición del estado en la memoria.
+	 */
+	public PetersonCompartido(ByteBuffer memoria, int base) {
+
+		_memoria = memoria;
+		_flag = new int[] { Memoria.linea(base, 0), Memoria.linea(base, 1) };
+		_turno = Memoria.linea(base, 2);
+
+	} // constructor
+
+	//-----------------------------------------------------
+
+	/**
+	 * "Preprotocolo" para entrar en la sección crítica.
+	 *
+	 * @param numHebra Número de proceso (0 o 1) que quiere entrar en
+	 * la sección crítica.
+	 */
+	public void entradaSeccionCritica(int numHebra) {
+
+		int otraHebra = numHebra ^ 0x1;
+
+		Memoria.LONG.setRelease(_memoria, _flag[numHebra], 1L);
+		Memoria.LONG.getAndSet(_memoria, _turno, (long) otraHebra);
+		VarHandle.fullFence();
+		while (((long) Memoria.LONG.getAcquire(_memoria, _flag[otraHebra]) != 0) &&
+		       ((long) Memoria.LONG.getAcquire(_memoria, _turno) == otraHebra))
+			; // Espera activa
+
+		// ¡Está libre!
+
+	} // entradaSeccionCritica
+
+	/**
+	 * "Postprotocolo" para indicar que el proceso abandona la sección
+	 * crítica.
+	 *
+	 * @param numHebra Número de proceso (0 o 1) que abandona la
+	 * sección crítica.
+	 */
+	public void salidaSeccionCritica(int numHebra) {
+
+		Memoria.LONG.setRelease(_memoria, _flag[numHebra], 0L);
+
+	} // salidaSeccionCritica
+
+	//-----------------------------------------------------
+	//                    Atributos
+	//-----------------------------------------------------
+
+	protected final ByteBuffer _memoria;
+
+	/**
+	 * Posición del flag de cada proceso.
+	 */
+	protected final int[] _flag;
+
+	/**
+	 * Posición del turno.
+	 */
+	protected final int _turno;
+
+} // PetersonCompartido